@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.ChromosomeReader;
+import com.samsarin.gatu.primitive.Chromosomes;
+import com.samsarin.gatu.primitive.Rng;
+
+/**
+ * Measures decoding a whole chromosome with {@link ChromosomeReader#readLong(int)}
+ * at several field widths. Widths that do not divide 64 exercise reads that
+ * straddle two words.
+ *
+ * @author chris@samsarin.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChromosomeReaderBenchmark {
+    @Param({"1024", "16384"})
+    public int length;
+
+    @Param({"1", "7", "32", "64"})
+    public int width;
+
+    private Chromosome chromosome;
+
+    @Setup
+    public void setUp() {
+        chromosome = Chromosomes.random(length, new Rng(Fixtures.SEED));
+    }
+
+    @Benchmark
+    public long readLong() {
+        ChromosomeReader reader = new ChromosomeReader(chromosome);
+        long sum = 0;
+        while (reader.remaining() >= width) {
+            sum += reader.readLong(width);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.samsarin.gatu.engine.Engine;
+import com.samsarin.gatu.engine.EngineBuilder;
+import com.samsarin.gatu.op.Ops;
+import com.samsarin.gatu.primitive.Candidate;
+import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.Rng;
+
+/**
+ * Measures whole generations of the generational engine with a cheap
+ * synthetic fitness op, so that the cost of the engine itself (selection,
+ * breeding, evaluation bookkeeping and sorting) dominates. Each invocation
+ * runs {@link #NUM_GENERATIONS} generations from the same seed, and the
+ * reported time is per run. The engine is built before the timer starts, but
+ * a run also evaluates generation 0 and, in off-heap mode, allocates the
+ * population stores, so the time is not divided into generations; compare
+ * runs with the same population size instead.
+ *
+ * @author chris@samsarin.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineBenchmark {
+    private static final int NUM_GENERATIONS = 20;
+
+    @Param({"100", "1000", "10000"})
+    public int populationSize;
+
+    @Param({"64", "1024"})
+    public int length;
+
+    /**
+     * The engine configuration: {@code default}, {@code partialSort} or
+     * {@code offHeap}.
+     */
+    @Param({"default", "partialSort", "offHeap"})
+    public String mode;
+
+    private List<Chromosome> initialPopulation;
+    private Engine engine;
+
+    @Setup
+    public void setUp() {
+        initialPopulation = Fixtures.population(populationSize, length, new Rng(Fixtures.SEED));
+    }
+
+    @Setup(Level.Invocation)
+    public void buildEngine() {
+        EngineBuilder builder = new EngineBuilder(initialPopulation, Fixtures.bitCountFitness())
+                .setSeed(Fixtures.SEED)
+                .addMutationOp(Ops.pointMutation(0.01))
+                .setTerminationOp(Ops.terminateAtGeneration(NUM_GENERATIONS));
+        if ("partialSort".equals(mode)) {
+            builder.setSelectionOp(Ops.rouletteWheelSelection()).setPartialSort(true);
+        } else if ("offHeap".equals(mode)) {
+            builder.setOffHeapPopulation(true);
+        }
+        engine = builder.build();
+    }
+
+    @Benchmark
+    public Candidate run() throws Exception {
+        return engine.call();
+    }
+}
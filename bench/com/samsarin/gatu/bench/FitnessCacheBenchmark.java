@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.samsarin.gatu.op.FitnessCache;
+import com.samsarin.gatu.op.FitnessOp;
+import com.samsarin.gatu.op.Ops;
+import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.Rng;
+
+/**
+ * Measures {@link Ops#cachingFitness(FitnessOp, int)} on the hit path, where
+ * every chromosome is already cached, and on the miss path, where the cache is
+ * much smaller than the set of chromosomes so nearly every lookup evaluates
+ * and evicts. The wrapped op is {@link Fixtures#bitCountFitness()}, so the
+ * miss path cost includes a cheap evaluation.
+ *
+ * @author chris@samsarin.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FitnessCacheBenchmark {
+    private static final int NUM_CHROMOSOMES = 4096;
+
+    @Param({"64", "1024"})
+    public int length;
+
+    private List<Chromosome> chromosomes;
+    private FitnessOp fitnessOp;
+    private FitnessCache hitCache;
+    private FitnessCache missCache;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        chromosomes = Fixtures.population(NUM_CHROMOSOMES, length, new Rng(Fixtures.SEED));
+        fitnessOp = Fixtures.bitCountFitness();
+        hitCache = Ops.cachingFitness(fitnessOp, NUM_CHROMOSOMES);
+        for (Chromosome chromosome : chromosomes) {
+            hitCache.fitness(chromosome);
+        }
+        missCache = Ops.cachingFitness(fitnessOp, 16);
+    }
+
+    @Benchmark
+    public double hit() {
+        return hitCache.fitness(nextChromosome());
+    }
+
+    @Benchmark
+    public double miss() {
+        return missCache.fitness(nextChromosome());
+    }
+
+    @Benchmark
+    public double uncached() {
+        return fitnessOp.fitness(nextChromosome());
+    }
+
+    private Chromosome nextChromosome() {
+        Chromosome chromosome = chromosomes.get(next);
+        next = (next + 1) % NUM_CHROMOSOMES;
+        return chromosome;
+    }
+}
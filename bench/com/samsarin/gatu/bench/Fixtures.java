@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.samsarin.gatu.op.FitnessOp;
+import com.samsarin.gatu.primitive.Candidate;
+import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.ChromosomeReader;
+import com.samsarin.gatu.primitive.Chromosomes;
+import com.samsarin.gatu.primitive.Rng;
+
+/**
+ * Shared inputs for the benchmarks. Everything is built from a fixed seed so
+ * that runs are comparable from release to release.
+ *
+ * @author chris@samsarin.com
+ */
+/* package private */ class Fixtures {
+    static final long SEED = 0x5EEDL;
+
+    private Fixtures() {}
+
+    /**
+     * A cheap synthetic fitness op: the number of genes that are set.
+     */
+    static FitnessOp bitCountFitness() {
+        return new FitnessOp() {
+            public double fitness(Chromosome chromosome) {
+                ChromosomeReader reader = new ChromosomeReader(chromosome);
+                int count = 0;
+                while (reader.remaining() >= 64) {
+                    count += Long.bitCount(reader.readLong());
+                }
+                if (reader.remaining() > 0) {
+                    count += Long.bitCount(reader.readLong(reader.remaining()));
+                }
+                return count;
+            }
+        };
+    }
+
+    static List<Chromosome> population(int size, int length, Rng random) {
+        List<Chromosome> population = new ArrayList<Chromosome>(size);
+        for (int i = 0; i < size; ++i) {
+            population.add(Chromosomes.random(length, random));
+        }
+        return population;
+    }
+
+    /**
+     * Returns candidates ordered from least to most fit, with fitness values
+     * 1 to {@code size}.
+     */
+    static List<Candidate> candidates(int size, Rng random) {
+        List<Candidate> candidates = new ArrayList<Candidate>(size);
+        for (int i = 0; i < size; ++i) {
+            final double fitness = i + 1;
+            final Chromosome chromosome = Chromosomes.random(64, random);
+            candidates.add(new Candidate() {
+                public double fitness() {
+                    return fitness;
+                }
+
+                public Chromosome chromosome() {
+                    return chromosome;
+                }
+
+                public int compareTo(Candidate other) {
+                    return Double.compare(fitness, other.fitness());
+                }
+            });
+        }
+        return candidates;
+    }
+
+    static double fitnessSum(List<Candidate> candidates) {
+        double sum = 0;
+        for (Candidate candidate : candidates) {
+            sum += candidate.fitness();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.samsarin.gatu.op.CrossoverOp;
+import com.samsarin.gatu.op.MutationOp;
+import com.samsarin.gatu.op.Ops;
+import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.Chromosomes;
+import com.samsarin.gatu.primitive.Pair;
+import com.samsarin.gatu.primitive.Rng;
+
+/**
+ * Measures each crossover and mutation op in {@link Ops} across chromosome
+ * lengths.
+ *
+ * @author chris@samsarin.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OperatorBenchmark {
+    @Param({"64", "1024", "16384"})
+    public int length;
+
+    private Pair<Chromosome> parents;
+    private Rng random;
+    private CrossoverOp singlePointCrossover;
+    private CrossoverOp uniformCrossover;
+    private MutationOp pointMutation;
+    private MutationOp inversion;
+
+    @Setup
+    public void setUp() {
+        random = new Rng(Fixtures.SEED);
+        parents = new Pair<Chromosome>(Chromosomes.random(length, random), Chromosomes.random(length, random));
+        singlePointCrossover = Ops.singlePointCrossover();
+        uniformCrossover = Ops.uniformCrossover();
+        pointMutation = Ops.pointMutation(0.01);
+        inversion = Ops.inversion(0.001);
+    }
+
+    @Benchmark
+    public Pair<Chromosome> singlePointCrossover() {
+        return singlePointCrossover.crossover(parents, random);
+    }
+
+    @Benchmark
+    public Pair<Chromosome> uniformCrossover() {
+        return uniformCrossover.crossover(parents, random);
+    }
+
+    @Benchmark
+    public Chromosome pointMutation() {
+        return pointMutation.mutate(parents.first(), random);
+    }
+
+    @Benchmark
+    public Chromosome inversion() {
+        return inversion.mutate(parents.first(), random);
+    }
+}
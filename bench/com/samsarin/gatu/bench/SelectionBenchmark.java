@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.samsarin.gatu.op.BatchSelectionOp;
+import com.samsarin.gatu.op.Ops;
+import com.samsarin.gatu.op.PreparedSelectionOp;
+import com.samsarin.gatu.op.SelectionOp;
+import com.samsarin.gatu.primitive.Candidate;
+import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.Rng;
+
+/**
+ * Measures each selection op in {@link Ops} across population sizes. The
+ * per-generation cost (preparing the roulette wheel, selecting a whole
+ * generation of parents at once) is measured separately from the cost of a
+ * single selection.
+ *
+ * @author chris@samsarin.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectionBenchmark {
+    @Param({"100", "10000", "1000000"})
+    public int populationSize;
+
+    private List<Candidate> candidates;
+    private double fitnessSum;
+    private Rng random;
+    private PreparedSelectionOp rouletteWheel;
+    private SelectionOp preparedRouletteWheel;
+    private BatchSelectionOp stochasticUniversalSampling;
+    private SelectionOp tournament;
+
+    @Setup
+    public void setUp() {
+        random = new Rng(Fixtures.SEED);
+        candidates = Fixtures.candidates(populationSize, random);
+        fitnessSum = Fixtures.fitnessSum(candidates);
+        rouletteWheel = (PreparedSelectionOp)Ops.rouletteWheelSelection();
+        preparedRouletteWheel = rouletteWheel.prepare(candidates, fitnessSum);
+        stochasticUniversalSampling = Ops.stochasticUniversalSampling();
+        tournament = Ops.tournamentSelection(3);
+    }
+
+    @Benchmark
+    public SelectionOp rouletteWheelPrepare() {
+        return rouletteWheel.prepare(candidates, fitnessSum);
+    }
+
+    @Benchmark
+    public Chromosome rouletteWheelSelect() {
+        return preparedRouletteWheel.select(candidates, fitnessSum, random);
+    }
+
+    @Benchmark
+    public List<Chromosome> stochasticUniversalSamplingGeneration() {
+        return stochasticUniversalSampling.selectAll(candidates, fitnessSum, populationSize, random);
+    }
+
+    @Benchmark
+    public Chromosome tournamentSelect() {
+        return tournament.select(candidates, fitnessSum, random);
+    }
+}
@@ -4,50 +4,489 @@
 
 package com.samsarin.gatu.sample.polys;
 
-import com.samsarin.gatu.op.FitnessOp;
+import com.samsarin.gatu.op.BoundedFitnessOp;
 import com.samsarin.gatu.primitive.Chromosome;
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Polygon;
 import java.awt.image.BufferedImage;
 import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Measures how closely the polygons encoded in a chromosome approximate an
+ * image. The fitness is the inverse of the squared difference between the
+ * rendered polygons and the image, summed over every pixel and channel.
+ * <p/>
+ * The op can also score candidates coarse to fine. It then keeps a mipmap of
+ * the image, where each level is half the width and height of the one before
+ * it. An op returned by {@link #atCoarseLevel(int)} first renders each
+ * candidate it is given a cutoff for at that level. The difference at that
+ * level, scaled by the number of full resolution pixels each coarse pixel
+ * covers, estimates the full resolution fitness. A candidate whose estimate
+ * falls short of the cutoff is given the estimate; only the others are
+ * scored at full resolution. The level of an op never changes, so a run
+ * that moves to finer levels uses a new op for each level.
+ * <p/>
+ * When populations are small there are too few candidates to keep every core
+ * busy, so the op can also split each evaluation into tiles that are drawn
+ * and compared in parallel on a {@link ForkJoinPool} (see
+ * {@link #setTiling(ForkJoinPool, int, int)}). Each polygon is drawn only in
+ * the tiles its bounding box overlaps.
+ * <p/>
+ * Given a cutoff (see {@link BoundedFitnessOp}), the op stops comparing
+ * pixels as soon as the difference so far puts the candidate below the
+ * cutoff, and tiled evaluations skip the tiles not yet drawn. Either way the
+ * fitness of the pixels compared so far is returned as an upper bound. Which
+ * tiles were drawn before the cutoff was passed depends on how the tiles were
+ * scheduled, so with more than one thread the bound can differ from run to
+ * run. A coarse estimate is not always an upper bound, so a candidate can
+ * be treated as falling short of the cutoff when its fitness would reach it.
+ * A fitness at or above the cutoff is always exact and at full resolution,
+ * at any level, so it can be cached and kept in checkpoints.
+ *
  * @author chris@samsarin.com
  */
-public class ImageFitnessOp implements FitnessOp {
+public class ImageFitnessOp implements BoundedFitnessOp {
+    /**
+     * The ways the polygons can be rendered.
+     */
+    public enum Renderer {
+        /**
+         * Draws each candidate into a new image with Java2D.
+         */
+        JAVA2D,
+
+        /**
+         * Draws each candidate with a {@link ScanlineRasterizer} into a pixel
+         * buffer that is reused by each thread. This does not allocate or
+         * take any locks, so it scales with the number of threads evaluating
+         * fitness.
+         */
+        SCANLINE
+    }
+
+    /**
+     * The source image at one level of detail.
+     */
+    private static final class Level {
+        final int sizeX;
+        final int sizeY;
+        final int[] colors;
+
+        /**
+         * The size of this level relative to the full resolution image.
+         */
+        final double scale;
+
+        /**
+         * The number of full resolution pixels covered by each pixel.
+         */
+        final double weight;
+
+        Level(int sizeX, int sizeY, int[] colors, double scale, double weight) {
+            this.sizeX = sizeX;
+            this.sizeY = sizeY;
+            this.colors = colors;
+            this.scale = scale;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * The pool and tile size used to evaluate tiles in parallel.
+     */
+    private static final class Tiling {
+        final ForkJoinPool pool;
+        final int tileWidth;
+        final int tileHeight;
+
+        Tiling(ForkJoinPool pool, int tileWidth, int tileHeight) {
+            this.pool = pool;
+            this.tileWidth = tileWidth;
+            this.tileHeight = tileHeight;
+        }
+    }
+
+    /**
+     * The tiles of one level: their size, clamped to the level, and how many
+     * there are across and down.
+     */
+    private static final class TileGrid {
+        final int tileWidth;
+        final int tileHeight;
+        final int tilesX;
+        final int tilesY;
+
+        TileGrid(Level level, Tiling tiling) {
+            tileWidth = Math.min(tiling.tileWidth, level.sizeX);
+            tileHeight = Math.min(tiling.tileHeight, level.sizeY);
+            tilesX = (level.sizeX + tileWidth - 1) / tileWidth;
+            tilesY = (level.sizeY + tileHeight - 1) / tileHeight;
+        }
+    }
+
+    /**
+     * The polygons that overlap each tile, in the order they are drawn.
+     */
+    private static final class TileBuckets {
+        int[][] polygons = new int[0][];
+        int[] counts = new int[0];
+
+        void reset(int numTiles) {
+            if (counts.length < numTiles) {
+                polygons = Arrays.copyOf(polygons, numTiles);
+                counts = new int[numTiles];
+                for (int i = 0; i < numTiles; ++i) {
+                    if (polygons[i] == null) {
+                        polygons[i] = new int[16];
+                    }
+                }
+            }
+            Arrays.fill(counts, 0, numTiles, 0);
+        }
+
+        void add(int tile, int polygon) {
+            if (counts[tile] == polygons[tile].length) {
+                polygons[tile] = Arrays.copyOf(polygons[tile], counts[tile] * 2);
+            }
+            polygons[tile][counts[tile]++] = polygon;
+        }
+    }
+
+    /**
+     * The squared difference at which a tiled evaluation is cut short, and
+     * the difference of the tiles drawn so far. Each tile's difference is a
+     * whole number, so the running total is kept exactly in a long.
+     */
+    private static final class DeltaLimit {
+        final double limit;
+        final AtomicLong drawn = new AtomicLong();
+
+        DeltaLimit(double limit) {
+            this.limit = limit;
+        }
+
+        boolean reached() {
+            return drawn.get() > limit;
+        }
+
+        void add(double delta) {
+            drawn.addAndGet((long)delta);
+        }
+    }
+
+    /**
+     * Draws and compares a range of tiles, splitting the range in half until
+     * each task has one tile. The halves are always added in the same order,
+     * so the result does not depend on how the tasks are scheduled unless the
+     * evaluation is cut short. Once the limit is reached the remaining tiles
+     * are skipped and count as no difference.
+     */
+    private final class TileTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<ColoredPolygon> polygons;
+        private final TileBuckets buckets;
+        private final int levelNum;
+        private final TileGrid grid;
+        private final DeltaLimit limit;
+        private final int fromTile;
+        private final int toTile;
+
+        TileTask(List<ColoredPolygon> polygons, TileBuckets buckets, int levelNum, TileGrid grid,
+                DeltaLimit limit, int fromTile, int toTile) {
+            this.polygons = polygons;
+            this.buckets = buckets;
+            this.levelNum = levelNum;
+            this.grid = grid;
+            this.limit = limit;
+            this.fromTile = fromTile;
+            this.toTile = toTile;
+        }
+
+        @Override
+        protected Double compute() {
+            if (toTile - fromTile == 1) {
+                if (limit == null) {
+                    return tileDelta(polygons, buckets, levelNum, grid, fromTile, Double.POSITIVE_INFINITY);
+                }
+                if (limit.reached()) {
+                    return 0.0;
+                }
+                double delta = tileDelta(polygons, buckets, levelNum, grid, fromTile, limit.limit);
+                limit.add(delta);
+                return delta;
+            }
+            int mid = (fromTile + toTile) >>> 1;
+            TileTask right = new TileTask(polygons, buckets, levelNum, grid, limit, mid, toTile);
+            right.fork();
+            double left = new TileTask(polygons, buckets, levelNum, grid, limit, fromTile, mid).compute();
+            return left + right.join();
+        }
+    }
+
     private final int sizeX;
     private final int sizeY;
-    private final int[] srcColors;
+    private final Level[] levels;
     private final int minVerticesPerPoly;
     private final int maxVerticesPerPoly;
-    
+    private final Renderer renderer;
+    private final ThreadLocal<ScanlineRasterizer[]> rasterizers = new ThreadLocal<ScanlineRasterizer[]>() {
+        @Override
+        protected ScanlineRasterizer[] initialValue() {
+            return new ScanlineRasterizer[levels.length];
+        }
+    };
+
+    private final ThreadLocal<ScanlineRasterizer[]> tileRasterizers = new ThreadLocal<ScanlineRasterizer[]>() {
+        @Override
+        protected ScanlineRasterizer[] initialValue() {
+            return new ScanlineRasterizer[levels.length];
+        }
+    };
+    private final ThreadLocal<TileBuckets> tileBuckets = new ThreadLocal<TileBuckets>() {
+        @Override
+        protected TileBuckets initialValue() {
+            return new TileBuckets();
+        }
+    };
+
+    private volatile Tiling tiling;
+    private final int coarseLevel;
+
     public ImageFitnessOp(BufferedImage image, int minVerticesPerPoly, int maxVerticesPerPoly) {
+        this(image, minVerticesPerPoly, maxVerticesPerPoly, Renderer.JAVA2D);
+    }
+
+    public ImageFitnessOp(BufferedImage image, int minVerticesPerPoly, int maxVerticesPerPoly,
+            Renderer renderer) {
+        this(image, minVerticesPerPoly, maxVerticesPerPoly, renderer, 1);
+    }
+
+    /**
+     * Creates an op that can score candidates at up to {@code numLevels}
+     * levels of detail, including full resolution. Fewer levels are kept if
+     * the image is too small to halve that many times. This op scores
+     * candidates at full resolution; use {@link #atCoarseLevel(int)} for an
+     * op that scores them at a coarser level first.
+     */
+    public ImageFitnessOp(BufferedImage image, int minVerticesPerPoly, int maxVerticesPerPoly,
+            Renderer renderer, int numLevels) {
         sizeX = image.getWidth();
         sizeY = image.getHeight();
-        srcColors = imageToByteArray(image);
+        levels = buildLevels(imageToByteArray(image), sizeX, sizeY, numLevels);
         this.minVerticesPerPoly = minVerticesPerPoly;
         this.maxVerticesPerPoly = maxVerticesPerPoly;
+        this.renderer = renderer;
+        this.coarseLevel = 0;
     }
 
+    private ImageFitnessOp(ImageFitnessOp op, int coarseLevel) {
+        sizeX = op.sizeX;
+        sizeY = op.sizeY;
+        levels = op.levels;
+        minVerticesPerPoly = op.minVerticesPerPoly;
+        maxVerticesPerPoly = op.maxVerticesPerPoly;
+        renderer = op.renderer;
+        tiling = op.tiling;
+        this.coarseLevel = coarseLevel;
+    }
+
+    /**
+     * Returns the exact fitness of {@code chromosome}, scored at full
+     * resolution.
+     */
     public double fitness(Chromosome chromosome) {
-        double delta = 0;
-        
+        return fitness(chromosome, Double.NEGATIVE_INFINITY);
+    }
+
+    public double fitness(Chromosome chromosome, double cutoff) {
         List<ColoredPolygon> polygons = PolygonDecoder.decode(chromosome, sizeX, sizeY,
                 minVerticesPerPoly, maxVerticesPerPoly);
-        int[] phenotype = createPhenotype(polygons);
 
-        assert phenotype.length == srcColors.length;
+        // Every fitness is positive, so without a positive cutoff every
+        // candidate is scored at full resolution
+        if (coarseLevel > 0 && cutoff > 0) {
+            double estimate = fitness(polygons, coarseLevel, cutoff);
+            if (estimate < cutoff) {
+                return estimate;
+            }
+        }
+        return fitness(polygons, 0, cutoff);
+    }
+
+    /**
+     * Returns the number of levels of detail, including full resolution.
+     */
+    public int numLevels() {
+        return levels.length;
+    }
 
-        for (int i = 0; i < phenotype.length; ++i) {
-            delta += delta(srcColors[i], phenotype[i]);
+    /**
+     * Returns an op that first scores each candidate it is given a cutoff for
+     * at {@code level}, and only scores it at full resolution if its estimate
+     * reaches the cutoff. Level 0 is full resolution; higher levels are
+     * clamped to the coarsest level. The op shares this op's mipmap and
+     * starts with its tiling.
+     */
+    public ImageFitnessOp atCoarseLevel(int level) {
+        return new ImageFitnessOp(this, Math.min(Math.max(0, level), levels.length - 1));
+    }
+
+    /**
+     * Splits each evaluation into {@code tileWidth} by {@code tileHeight}
+     * pixel tiles that are drawn and compared in parallel on {@code pool}.
+     * Tiles are clamped to the size of the image, so
+     * {@link Integer#MAX_VALUE} makes tiles that span the image. This lowers
+     * the time taken by each evaluation, which helps when there are fewer
+     * candidates than cores. Tiling is turned off if {@code pool} is
+     * {@code null}. Only the {@link Renderer#SCANLINE} renderer can draw
+     * tiles.
+     * <p/>
+     * A polygon that overlaps several tiles in a row has its edges
+     * intersected with each of the row's scanlines once per tile, so when
+     * most polygons are large, bands as wide as the image are cheaper than
+     * square tiles.
+     *
+     * @throws IllegalStateException if the renderer is not
+     *         {@link Renderer#SCANLINE}
+     */
+    public void setTiling(ForkJoinPool pool, int tileWidth, int tileHeight) {
+        if (pool != null && renderer != Renderer.SCANLINE) {
+            throw new IllegalStateException("Only the scanline renderer can draw tiles");
+        }
+        if (tileWidth < 1 || tileHeight < 1) {
+            throw new IllegalArgumentException("Tile size must be positive: " + tileWidth + "x" + tileHeight);
         }
+        tiling = pool != null ? new Tiling(pool, tileWidth, tileHeight) : null;
+    }
+
+    /**
+     * Returns the fitness of {@code polygons} at the given level, or an upper
+     * bound less than {@code cutoff} if the polygons are less fit than that.
+     */
+    private double fitness(List<ColoredPolygon> polygons, int levelNum, double cutoff) {
+        Level level = levels[levelNum];
+        // The fitness is below the cutoff once the difference passes this,
+        // with enough slack that rounding never cuts short a candidate that
+        // is exactly at the cutoff, such as the worst elite
+        double limit = cutoff > 0 ? (1 + 1e-9) / (cutoff * level.weight) : Double.POSITIVE_INFINITY;
+        Tiling tiling = this.tiling;
+        double delta;
+        if (tiling != null) {
+            delta = tiledDelta(polygons, levelNum, tiling, limit);
+        } else {
+            int[] phenotype = renderer == Renderer.SCANLINE
+                    ? rasterize(polygons, levelNum)
+                    : createPhenotype(polygons, level);
+            delta = delta(level, 0, 0, level.sizeX, level.sizeY, phenotype, limit);
+        }
+        delta *= level.weight;
 
         if (delta == 0) delta = 1;
 
         return 1 / delta;
     }
 
+    /**
+     * Returns the squared difference between the {@code width} by
+     * {@code height} pixels of {@code level} whose top left pixel is at
+     * ({@code x}, {@code y}) and {@code pixels}, which holds the same window
+     * row by row. Stops at the end of the first row where the difference
+     * exceeds {@code limit}.
+     */
+    private double delta(Level level, int x, int y, int width, int height, int[] pixels, double limit) {
+        double delta = 0;
+        for (int row = 0; row < height && delta <= limit; ++row) {
+            int src = (y + row) * level.sizeX + x;
+            int dst = row * width;
+            for (int col = 0; col < width; ++col) {
+                delta += delta(level.colors[src + col], pixels[dst + col]);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Buckets the polygons by the tiles their bounding boxes overlap, then
+     * draws and compares the tiles on the tiling pool until the difference
+     * exceeds {@code limit}.
+     */
+    private double tiledDelta(List<ColoredPolygon> polygons, int levelNum, Tiling tiling, double limit) {
+        Level level = levels[levelNum];
+        TileGrid grid = new TileGrid(level, tiling);
+
+        TileBuckets buckets = tileBuckets.get();
+        buckets.reset(grid.tilesX * grid.tilesY);
+        for (int i = 0; i < polygons.size(); ++i) {
+            Polygon polygon = polygons.get(i).polygon();
+            if (polygon.npoints == 0) {
+                continue;
+            }
+            int minX = Integer.MAX_VALUE;
+            int minY = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE;
+            int maxY = Integer.MIN_VALUE;
+            for (int j = 0; j < polygon.npoints; ++j) {
+                minX = Math.min(minX, polygon.xpoints[j]);
+                maxX = Math.max(maxX, polygon.xpoints[j]);
+                minY = Math.min(minY, polygon.ypoints[j]);
+                maxY = Math.max(maxY, polygon.ypoints[j]);
+            }
+
+            // The pixels the polygon may touch at this level
+            int fromTileX = Math.max(0, (int)Math.floor(minX * level.scale) / grid.tileWidth);
+            int toTileX = Math.min(grid.tilesX - 1, (int)Math.ceil(maxX * level.scale) / grid.tileWidth);
+            int fromTileY = Math.max(0, (int)Math.floor(minY * level.scale) / grid.tileHeight);
+            int toTileY = Math.min(grid.tilesY - 1, (int)Math.ceil(maxY * level.scale) / grid.tileHeight);
+            for (int ty = fromTileY; ty <= toTileY; ++ty) {
+                for (int tx = fromTileX; tx <= toTileX; ++tx) {
+                    buckets.add(ty * grid.tilesX + tx, i);
+                }
+            }
+        }
+
+        DeltaLimit deltaLimit = limit < Double.POSITIVE_INFINITY ? new DeltaLimit(limit) : null;
+        return tiling.pool.invoke(new TileTask(polygons, buckets, levelNum, grid, deltaLimit,
+                0, grid.tilesX * grid.tilesY));
+    }
+
+    /**
+     * Draws the polygons in one tile with this thread's tile rasterizer and
+     * returns the squared difference from the source in that tile, stopping
+     * early if it exceeds {@code limit}.
+     */
+    private double tileDelta(List<ColoredPolygon> polygons, TileBuckets buckets, int levelNum, TileGrid grid,
+            int tile, double limit) {
+        Level level = levels[levelNum];
+        int x = (tile % grid.tilesX) * grid.tileWidth;
+        int y = (tile / grid.tilesX) * grid.tileHeight;
+        int width = Math.min(grid.tileWidth, level.sizeX - x);
+        int height = Math.min(grid.tileHeight, level.sizeY - y);
+
+        ScanlineRasterizer[] threadRasterizers = tileRasterizers.get();
+        ScanlineRasterizer rasterizer = threadRasterizers[levelNum];
+        if (rasterizer == null || rasterizer.pixels().length < grid.tileWidth * grid.tileHeight) {
+            rasterizer = new ScanlineRasterizer(grid.tileWidth, grid.tileHeight, level.scale);
+            threadRasterizers[levelNum] = rasterizer;
+        }
+
+        rasterizer.setWindow(x, y, width, height);
+        rasterizer.clear(0);
+        int[] bucket = buckets.polygons[tile];
+        for (int i = 0; i < buckets.counts[tile]; ++i) {
+            ColoredPolygon coloredPoly = polygons.get(bucket[i]);
+            rasterizer.fill(coloredPoly.polygon(), coloredPoly.color());
+        }
+        return delta(level, x, y, width, height, rasterizer.pixels(), limit);
+    }
+
     private double delta(int first, int second) {
         int redDelta = getRed(first) - getRed(second);
         int greenDelta = getGreen(first) - getGreen(second);
@@ -55,24 +494,47 @@ public class ImageFitnessOp implements FitnessOp {
         return redDelta * redDelta + greenDelta * greenDelta + blueDelta * blueDelta;
     }
 
-    private int getRed(int color) {
+    private static int getRed(int color) {
         return (color >> 16) & 0xFF;
     }
 
-    private int getGreen(int color) {
+    private static int getGreen(int color) {
         return (color >> 8) & 0xFF;
     }
 
-    private int getBlue(int color) {
+    private static int getBlue(int color) {
         return color & 0xFF;
     }
 
-    private int[] createPhenotype(List<ColoredPolygon> coloredPolys) {
-        BufferedImage image = new BufferedImage(sizeX, sizeY, BufferedImage.TYPE_INT_RGB);
+    /**
+     * Draws the polygons with this thread's rasterizer for the level and
+     * returns its pixels, which are overwritten by the thread's next call.
+     */
+    private int[] rasterize(List<ColoredPolygon> coloredPolys, int levelNum) {
+        ScanlineRasterizer[] threadRasterizers = rasterizers.get();
+        ScanlineRasterizer rasterizer = threadRasterizers[levelNum];
+        if (rasterizer == null) {
+            Level level = levels[levelNum];
+            rasterizer = new ScanlineRasterizer(level.sizeX, level.sizeY, level.scale);
+            threadRasterizers[levelNum] = rasterizer;
+        }
+
+        rasterizer.clear(0);
+        for (ColoredPolygon coloredPoly : coloredPolys) {
+            rasterizer.fill(coloredPoly.polygon(), coloredPoly.color());
+        }
+        return rasterizer.pixels();
+    }
+
+    private int[] createPhenotype(List<ColoredPolygon> coloredPolys, Level level) {
+        BufferedImage image = new BufferedImage(level.sizeX, level.sizeY, BufferedImage.TYPE_INT_RGB);
         Graphics2D graphics = null;
         try {
             graphics = image.createGraphics();
             graphics.setBackground(Color.BLACK);
+            if (level.scale != 1) {
+                graphics.scale(level.scale, level.scale);
+            }
             for (ColoredPolygon coloredPoly: coloredPolys) {
                 graphics.setColor(coloredPoly.color());
                 graphics.fillPolygon(coloredPoly.polygon());
@@ -85,15 +547,61 @@ public class ImageFitnessOp implements FitnessOp {
         }
     }
 
-    private int[] imageToByteArray(BufferedImage image) {
-        int[] colors = new int[image.getWidth() * image.getHeight()];
+    private static int[] imageToByteArray(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] colors = new int[width * height];
         if (image.getType() == BufferedImage.TYPE_INT_ARGB ||
                 image.getType() == BufferedImage.TYPE_INT_RGB) {
             WritableRaster raster = image.getRaster();
-            raster.getDataElements(0, 0, sizeX, sizeY, colors);
+            raster.getDataElements(0, 0, width, height, colors);
         } else {
-            image.getRGB(0, 0, sizeX, sizeY, colors, 0, sizeX);
+            image.getRGB(0, 0, width, height, colors, 0, width);
         }
         return colors;
     }
+
+    /**
+     * Builds the mipmap of the source image, halving its size at each level
+     * until there are {@code numLevels} levels or it can not be halved again.
+     */
+    private static Level[] buildLevels(int[] colors, int sizeX, int sizeY, int numLevels) {
+        List<Level> levels = new ArrayList<Level>();
+        Level level = new Level(sizeX, sizeY, colors, 1, 1);
+        levels.add(level);
+        while (levels.size() < numLevels && level.sizeX >= 2 && level.sizeY >= 2) {
+            // An odd last row or column is dropped
+            int levelX = level.sizeX / 2;
+            int levelY = level.sizeY / 2;
+            int[] levelColors = downsample(level.colors, level.sizeX, levelX, levelY);
+            level = new Level(levelX, levelY, levelColors, level.scale / 2,
+                    (double)sizeX * sizeY / (levelX * levelY));
+            levels.add(level);
+        }
+        return levels.toArray(new Level[levels.size()]);
+    }
+
+    /**
+     * Averages each 2x2 block of pixels into one pixel of the next level.
+     */
+    private static int[] downsample(int[] colors, int sizeX, int levelX, int levelY) {
+        int[] result = new int[levelX * levelY];
+        for (int y = 0; y < levelY; ++y) {
+            for (int x = 0; x < levelX; ++x) {
+                int red = 0;
+                int green = 0;
+                int blue = 0;
+                for (int dy = 0; dy < 2; ++dy) {
+                    for (int dx = 0; dx < 2; ++dx) {
+                        int color = colors[(2 * y + dy) * sizeX + 2 * x + dx];
+                        red += getRed(color);
+                        green += getGreen(color);
+                        blue += getBlue(color);
+                    }
+                }
+                result[y * levelX + x] = ((red + 2) / 4 << 16) | ((green + 2) / 4 << 8) | ((blue + 2) / 4);
+            }
+        }
+        return result;
+    }
 }
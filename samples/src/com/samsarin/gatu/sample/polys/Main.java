@@ -20,6 +20,7 @@ import java.io.File;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import javax.imageio.ImageIO;
 
 /**
@@ -27,6 +28,11 @@ import javax.imageio.ImageIO;
  * @author chris@samsarin.com
  */
 public class Main {
+    /**
+     * The number of generations scored at each coarse level.
+     */
+    private static final int GENERATIONS_PER_LEVEL = 1000;
+
     public static void usage() {
         System.err.println("Usage: java " + Main.class.getName() + " src-image dest-dir [num-polys]");
         System.exit(1);
@@ -49,17 +55,16 @@ public class Main {
 
         final BufferedImage srcImage = ImageIO.read(new File(srcFile));
         
-        int chromosomeLength = PolygonDecoder.estimatedBitsToEncodePolys(numPolys,
+        final int chromosomeLength = PolygonDecoder.estimatedBitsToEncodePolys(numPolys,
                 (minVerticesPerPoly + maxVerticesPerPoly) / 2, srcImage.getWidth(), srcImage.getHeight());
         
-        FitnessOp fitnessOp = new ImageFitnessOp(srcImage, minVerticesPerPoly, maxVerticesPerPoly);
-        EngineBuilder builder = new EngineBuilder(intialPopulation(10, chromosomeLength), Ops.cachingFitness(fitnessOp, 50))
-                .addMutationOp(Ops.pointMutation(5 / chromosomeLength))
-                .addMutationOp(Ops.inversion(0.1 / chromosomeLength))
-                .addListener(EngineListeners.generationPrinter())
-                .setTerminationOp(Ops.terminateAtGeneration(1000000));
-
-        builder.addListener(new EngineListener() {
+        ImageFitnessOp imageFitnessOp = new ImageFitnessOp(srcImage, minVerticesPerPoly, maxVerticesPerPoly,
+                ImageFitnessOp.Renderer.SCANLINE, 5);
+        // The population is too small to keep every core busy, so each
+        // evaluation is split into bands that are drawn in parallel
+        imageFitnessOp.setTiling(ForkJoinPool.commonPool(), Integer.MAX_VALUE, 32);
+
+        EngineListener saver = new EngineListener() {
             public void onGeneration(int generationNum, Candidate bestCandidate, List<Candidate> candidates) {
                 if (generationNum % 100 == 0) {
                     saveCandidate(bestCandidate, Integer.toString(generationNum), 
@@ -67,10 +72,40 @@ public class Main {
                             minVerticesPerPoly, maxVerticesPerPoly, destDir);
                 }
             }
-        });
-
-        Engine engine = builder.build();
-        Candidate best = engine.call();
+        };
+
+        // The run goes through a stage for each level of the image's mipmap,
+        // from the coarsest to full resolution. Each stage scores offspring
+        // at its level first and only refines those that could become elites.
+        // Every stage after the first resumes from the checkpoint the one
+        // before it wrote when it ended, so a restarted run picks its stage
+        // from the generation in the checkpoint, and a stage the checkpoint is
+        // already past ends at once. Scores that reach the worst elite are
+        // exact at every level, so they are cached and checkpointed as they are.
+        File checkpointFile = new File(destDir, "engine.checkpoint");
+        Candidate best = null;
+        for (int level = imageFitnessOp.numLevels() - 1; level >= 0; --level) {
+            int lastGeneration = level > 0
+                    ? (imageFitnessOp.numLevels() - level) * GENERATIONS_PER_LEVEL
+                    : 1000000;
+            FitnessOp fitnessOp = Ops.cachingFitness(imageFitnessOp.atCoarseLevel(level), 50);
+            EngineBuilder builder = checkpointFile.exists()
+                    ? EngineBuilder.fromCheckpoint(checkpointFile, fitnessOp)
+                    : new EngineBuilder(intialPopulation(10, chromosomeLength), fitnessOp);
+            // Tournaments only compare fitness, so offspring that can not
+            // become elites are only scored until they fall short of the
+            // worst elite
+            builder.setCheckpoint(checkpointFile, 100)
+                    .setSelectionOp(Ops.tournamentSelection(2))
+                    .addMutationOp(Ops.pointMutation(5 / chromosomeLength))
+                    .addMutationOp(Ops.inversion(0.1 / chromosomeLength))
+                    .addListener(EngineListeners.generationPrinter())
+                    .addListener(saver)
+                    .setTerminationOp(Ops.terminateAtGeneration(lastGeneration));
+
+            Engine engine = builder.build();
+            best = engine.call();
+        }
 
         System.out.println("Best fitness: " + best.fitness());
         saveCandidate(best, "best", srcImage.getWidth(), srcImage.getHeight(), 
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.sample.polys;
+
+import java.awt.Color;
+import java.awt.Polygon;
+import java.util.Arrays;
+
+/**
+ * Fills polygons into an {@code int[]} of RGB pixels, blending each polygon's
+ * color over the pixels already drawn by its alpha. A pixel is filled if its
+ * center is inside the polygon by the even-odd rule, after the polygon is
+ * moved a quarter of a pixel down and right as Java2D does when it normalizes
+ * a shape. The result matches {@link java.awt.Graphics#fillPolygon(Polygon)}
+ * apart from rare pixels on an edge and differences in rounding.
+ * <p/>
+ * A rasterizer may draw at a smaller scale than the polygons' coordinates,
+ * for example to render a level of a mipmap. Each pixel is then filled if the
+ * point in polygon coordinates under its center is inside the polygon.
+ * <p/>
+ * A rasterizer draws into a window of the image, which is the whole image
+ * unless {@link #setWindow(int, int, int, int)} is called. Only the pixels in
+ * the window are drawn, so an image can be drawn a tile at a time.
+ * <p/>
+ * The pixel buffer and the scratch space are allocated once and reused, so
+ * drawing does not allocate. This class is NOT thread-safe; use one
+ * rasterizer per thread.
+ *
+ * @author chris@samsarin.com
+ */
+/* package private */ class ScanlineRasterizer {
+    private final double scale;
+    private final int[] pixels;
+
+    /**
+     * The window of the image that is drawn: its top left pixel and its size.
+     */
+    private int originX;
+    private int originY;
+    private int width;
+    private int height;
+
+    /**
+     * The x coordinates at which the current scanline crosses the polygon's
+     * edges. Grown as needed.
+     */
+    private double[] crossings = new double[16];
+
+    ScanlineRasterizer(int width, int height) {
+        this(width, height, 1);
+    }
+
+    /**
+     * Creates a rasterizer that draws polygons at {@code scale} times the
+     * size of their coordinates. The window can not be made larger than
+     * {@code width} by {@code height} pixels.
+     */
+    ScanlineRasterizer(int width, int height, double scale) {
+        this.scale = scale;
+        this.pixels = new int[width * height];
+        setWindow(0, 0, width, height);
+    }
+
+    /**
+     * Moves the window to the {@code width} by {@code height} pixels whose top
+     * left pixel is at ({@code x}, {@code y}) in the image. The pixels in the
+     * window are not cleared.
+     */
+    void setWindow(int x, int y, int width, int height) {
+        if (width * height > pixels.length) {
+            throw new IllegalArgumentException("Window is larger than the rasterizer: " + width + "x" + height);
+        }
+        this.originX = x;
+        this.originY = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Returns the pixels drawn so far in the window, row by row. Only the
+     * first {@code width * height} values are used. The array is reused by
+     * later calls.
+     */
+    int[] pixels() {
+        return pixels;
+    }
+
+    /**
+     * Sets every pixel in the window to {@code rgb}.
+     */
+    void clear(int rgb) {
+        Arrays.fill(pixels, 0, width * height, rgb);
+    }
+
+    /**
+     * Draws {@code polygon} in {@code color}, blended over the current pixels
+     * by the color's alpha.
+     */
+    void fill(Polygon polygon, Color color) {
+        int alpha = color.getAlpha();
+        int n = polygon.npoints;
+        if (alpha == 0 || n < 3) {
+            return;
+        }
+        int[] xs = polygon.xpoints;
+        int[] ys = polygon.ypoints;
+        if (crossings.length < n) {
+            crossings = new double[n];
+        }
+
+        int minY = Integer.MAX_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < n; ++i) {
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        int fromY = Math.max(originY, (int)Math.floor(minY * scale));
+        int toY = Math.min(originY + height, (int)Math.ceil(maxY * scale) + 1);
+
+        int rgb = color.getRGB() & 0xFFFFFF;
+        for (int y = fromY; y < toY; ++y) {
+            // Sample each row at the center of its pixels, less the quarter
+            // pixel offset, in polygon coordinates
+            double center = (y + 0.5) / scale - 0.25;
+            int count = 0;
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                if ((ys[i] > center) != (ys[j] > center)) {
+                    double x = xs[i] + (center - ys[i]) * (xs[j] - xs[i]) / (ys[j] - ys[i]);
+                    // Insertion sort; polygons have only a few edges
+                    int k = count++;
+                    for (; k > 0 && crossings[k - 1] > x; --k) {
+                        crossings[k] = crossings[k - 1];
+                    }
+                    crossings[k] = x;
+                }
+            }
+
+            int row = (y - originY) * width - originX;
+            for (int k = 0; k + 1 < count; k += 2) {
+                // Pixels whose offset centers are in [crossings[k], crossings[k + 1])
+                int fromX = Math.max(originX, (int)Math.ceil((crossings[k] + 0.25) * scale - 0.5));
+                int toX = Math.min(originX + width, (int)Math.ceil((crossings[k + 1] + 0.25) * scale - 0.5));
+                if (fromX < toX) {
+                    blend(row + fromX, row + toX, rgb, alpha);
+                }
+            }
+        }
+    }
+
+    /**
+     * Blends {@code rgb} with {@code alpha} over the pixels from
+     * {@code fromIndex}, inclusive, to {@code toIndex}, exclusive.
+     */
+    private void blend(int fromIndex, int toIndex, int rgb, int alpha) {
+        if (alpha == 255) {
+            Arrays.fill(pixels, fromIndex, toIndex, rgb);
+            return;
+        }
+
+        // Each product is rounded separately, as Java2D does
+        int inverse = 255 - alpha;
+        int red = div255(((rgb >> 16) & 0xFF) * alpha);
+        int green = div255(((rgb >> 8) & 0xFF) * alpha);
+        int blue = div255((rgb & 0xFF) * alpha);
+        for (int i = fromIndex; i < toIndex; ++i) {
+            int dst = pixels[i];
+            int r = red + div255(((dst >> 16) & 0xFF) * inverse);
+            int g = green + div255(((dst >> 8) & 0xFF) * inverse);
+            int b = blue + div255((dst & 0xFF) * inverse);
+            pixels[i] = (r << 16) | (g << 8) | b;
+        }
+    }
+
+    /**
+     * Returns {@code value / 255}, rounded, for {@code value} from 0 to
+     * {@code 255 * 255}.
+     */
+    private static int div255(int value) {
+        value += 128;
+        return (value + (value >> 8)) >> 8;
+    }
+}
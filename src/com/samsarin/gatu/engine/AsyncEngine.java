@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+package com.samsarin.gatu.engine;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BiConsumer;
+
+import com.samsarin.gatu.op.AsyncFitnessOp;
+import com.samsarin.gatu.primitive.Candidate;
+import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.Pair;
+import com.samsarin.gatu.primitive.Rng;
+
+/**
+ * A steady-state engine that keeps a bounded number of fitness evaluations in
+ * flight. Whenever an evaluation completes its candidate replaces the least
+ * fit candidate in the population and a new child is bred and submitted, so
+ * no evaluation ever waits for a slower one.
+ * <p/>
+ * The population is only changed on the thread that calls {@link #call()}.
+ * Completed evaluations are handed to it through a queue.
+ * <p/>
+ * A generation is counted each time as many evaluations have completed as
+ * there are candidates in the population.
+ *
+ * @author chris@samsarin.com
+ */
+/* package private */ class AsyncEngine implements Engine {
+    private final EngineImpl engine;
+    private final List<Chromosome> initialPopulation;
+    private final AsyncFitnessOp fitnessOp;
+    private final int maxInFlight;
+
+    /**
+     * The outcome of a single fitness evaluation.
+     */
+    private static class Result {
+        final Chromosome chromosome;
+        final Double fitness;
+        final Throwable error;
+
+        Result(Chromosome chromosome, Double fitness, Throwable error) {
+            this.chromosome = chromosome;
+            this.fitness = fitness;
+            this.error = error;
+        }
+    }
+
+    AsyncEngine(EngineImpl engine, List<Chromosome> initialPopulation,
+            AsyncFitnessOp fitnessOp, int maxInFlight) {
+        this.engine = engine;
+        this.initialPopulation = initialPopulation;
+        this.fitnessOp = fitnessOp;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public Candidate call() {
+        Rng random = engine.newRng();
+        BlockingQueue<Result> results = new LinkedBlockingQueue<Result>();
+
+        // The initial population is held to the same bound on evaluations in
+        // flight as the offspring
+        CandidateTree population = new CandidateTree();
+        Iterator<Chromosome> seeds = initialPopulation.iterator();
+        int inFlight = 0;
+        while (population.size() < initialPopulation.size()) {
+            while (inFlight < maxInFlight && seeds.hasNext()) {
+                submit(seeds.next(), results);
+                inFlight++;
+            }
+            population.add(candidate(take(results)));
+            inFlight--;
+        }
+
+        Queue<Chromosome> unborn = new LinkedList<Chromosome>();
+        int generationNum = 0;
+        int arrivals = 0;
+        while (true) {
+            if (arrivals >= population.size()) {
+                arrivals -= population.size();
+                generationNum++;
+            }
+            if (arrivals == 0) {
+                Candidate best = engine.bestCandidate(population);
+                if (engine.done(generationNum, best)) {
+                    break;
+                }
+                engine.notifyListeners(generationNum, best, population.snapshot());
+            }
+
+            while (inFlight < maxInFlight) {
+                if (unborn.isEmpty()) {
+                    Pair<Chromosome> children = engine.breed(population, population.fitnessSum(), random);
+                    unborn.add(children.first());
+                    unborn.add(children.second());
+                }
+                submit(unborn.remove(), results);
+                inFlight++;
+            }
+
+            Candidate child = candidate(take(results));
+            inFlight--;
+            population.remove(0);
+            population.add(child);
+            arrivals++;
+        }
+
+        // Evaluations that are still in flight are left to complete on their own
+        return engine.bestCandidate(population);
+    }
+
+    private void submit(final Chromosome chromosome, final BlockingQueue<Result> results) {
+        fitnessOp.fitness(chromosome).whenComplete(new BiConsumer<Double, Throwable>() {
+            public void accept(Double fitness, Throwable error) {
+                results.add(new Result(chromosome, fitness, error));
+            }
+        });
+    }
+
+    private Result take(BlockingQueue<Result> results) {
+        try {
+            return results.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for fitness evaluation", e);
+        }
+    }
+
+    private Candidate candidate(Result result) {
+        if (result.error != null) {
+            Throwable cause = result.error;
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IllegalStateException("Fitness evaluation failed", cause);
+        }
+        return new CandidateImpl(result.fitness, result.chromosome);
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+package com.samsarin.gatu.engine;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.samsarin.gatu.primitive.Candidate;
+import com.samsarin.gatu.primitive.CumulativeCandidateList;
+
+/**
+ * A population of candidates ordered from least to most fit. Each node of the
+ * tree (a treap) tracks the size and fitness sum of its subtree, so adding,
+ * removing, looking up a candidate by rank and looking up a candidate by
+ * cumulative fitness all take O(log n) time.
+ * <p/>
+ * Candidates with the same fitness are ordered by the time they were added.
+ * The tree does not implement {@link java.util.RandomAccess}, because
+ * {@link #get(int)} takes O(log n) time; iterating is cheaper than indexing.
+ * <p/>
+ * This class is not thread safe.
+ *
+ * @author chris@samsarin.com
+ */
+/* package private */ class CandidateTree extends AbstractList<Candidate>
+        implements CumulativeCandidateList {
+
+    private static class Node {
+        final Candidate candidate;
+        final long seq;
+        final int priority;
+        Node left;
+        Node right;
+        int size;
+        double sum;
+
+        Node(Candidate candidate, long seq, int priority) {
+            this.candidate = candidate;
+            this.seq = seq;
+            this.priority = priority;
+            update();
+        }
+
+        void update() {
+            size = 1 + size(left) + size(right);
+            sum = candidate.fitness() + sum(left) + sum(right);
+        }
+    }
+
+    private Node root;
+    private long nextSeq;
+    private int nextPriority = 0x2545F491;
+
+    /**
+     * Adds {@code candidate} to the tree.
+     */
+    public boolean add(Candidate candidate) {
+        root = insert(root, new Node(candidate, nextSeq++, nextPriority()));
+        modCount++;
+        return true;
+    }
+
+    public Candidate remove(int index) {
+        Candidate candidate = get(index);
+        root = delete(root, index);
+        modCount++;
+        return candidate;
+    }
+
+    public Candidate get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index out of bounds. Expected 0 <= index < "
+                    + size() + ". Actual: " + index);
+        }
+
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node.candidate;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public double fitnessSum() {
+        return sum(root);
+    }
+
+    public int indexOfCumulativeFitness(double cumulativeFitness) {
+        if (root == null) {
+            throw new IndexOutOfBoundsException("The tree is empty");
+        }
+
+        Node node = root;
+        int index = 0;
+        while (true) {
+            double leftSum = sum(node.left);
+            if (node.left != null && cumulativeFitness < leftSum) {
+                node = node.left;
+                continue;
+            }
+
+            cumulativeFitness -= leftSum;
+            index += size(node.left);
+            if (cumulativeFitness < node.candidate.fitness() || node.right == null) {
+                return index;
+            }
+
+            cumulativeFitness -= node.candidate.fitness();
+            index++;
+            node = node.right;
+        }
+    }
+
+    /**
+     * Returns a copy of the candidates in order, from least to most fit.
+     */
+    List<Candidate> snapshot() {
+        List<Candidate> candidates = new ArrayList<Candidate>(size());
+        collect(root, candidates);
+        return candidates;
+    }
+
+    private static void collect(Node node, List<Candidate> candidates) {
+        while (node != null) {
+            collect(node.left, candidates);
+            candidates.add(node.candidate);
+            node = node.right;
+        }
+    }
+
+    private static Node insert(Node node, Node newNode) {
+        if (node == null) {
+            return newNode;
+        }
+
+        if (compare(newNode, node) < 0) {
+            node.left = insert(node.left, newNode);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, newNode);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        node.update();
+        return node;
+    }
+
+    private static Node delete(Node node, int index) {
+        int leftSize = size(node.left);
+        if (index < leftSize) {
+            node.left = delete(node.left, index);
+        } else if (index > leftSize) {
+            node.right = delete(node.right, index - leftSize - 1);
+        } else {
+            return merge(node.left, node.right);
+        }
+        node.update();
+        return node;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) return right;
+        if (right == null) return left;
+
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        } else {
+            right.left = merge(left, right.left);
+            right.update();
+            return right;
+        }
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        node.update();
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        node.update();
+        return right;
+    }
+
+    private static int compare(Node n1, Node n2) {
+        int result = n1.candidate.compareTo(n2.candidate);
+        if (result != 0) {
+            return result;
+        }
+        return n1.seq < n2.seq ? -1 : (n1.seq == n2.seq ? 0 : 1);
+    }
+
+    private int nextPriority() {
+        // xorshift: cheap, and good enough to keep the treap balanced
+        int x = nextPriority;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        nextPriority = x;
+        return x;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static double sum(Node node) {
+        return node == null ? 0 : node.sum;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+package com.samsarin.gatu.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.samsarin.gatu.primitive.Candidate;
+import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.ChromosomeCodec;
+import com.samsarin.gatu.primitive.Rng;
+
+/**
+ * A snapshot of a generational engine run: the generation number, the state
+ * of the random number generator and the evaluated population. Resuming from
+ * a checkpoint continues the run exactly as it would have continued had it
+ * not stopped.
+ * <p/>
+ * A checkpoint file has a fixed header followed by each candidate:
+ * <pre>
+ * int    magic number
+ * int    format version
+ * int    generation number
+ * long   random number generator state
+ * long   random number generator increment
+ * int    number of candidates
+ *
+ * double fitness          (repeated for each candidate)
+ * ...    chromosome, encoded by {@link ChromosomeCodec}
+ * </pre>
+ * All values are little-endian.
+ *
+ * @author chris@samsarin.com
+ */
+/* package private */ class Checkpoint {
+    private static final int MAGIC = 0x47415455; // "GATU"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 8 + 4;
+
+    private final int generationNum;
+    private final long rngState;
+    private final long rngGamma;
+    private final List<Candidate> candidates;
+
+    Checkpoint(int generationNum, Rng random, List<Candidate> candidates) {
+        this(generationNum, random.state(), random.gamma(), candidates);
+    }
+
+    private Checkpoint(int generationNum, long rngState, long rngGamma, List<Candidate> candidates) {
+        this.generationNum = generationNum;
+        this.rngState = rngState;
+        this.rngGamma = rngGamma;
+        this.candidates = candidates;
+    }
+
+    int generationNum() {
+        return generationNum;
+    }
+
+    /**
+     * Returns a new generator in the state saved in this checkpoint.
+     */
+    Rng random() {
+        return Rng.restore(rngState, rngGamma);
+    }
+
+    /**
+     * Returns the evaluated candidates, in the order they were saved.
+     */
+    List<Candidate> candidates() {
+        return candidates;
+    }
+
+    List<Chromosome> chromosomes() {
+        List<Chromosome> chromosomes = new ArrayList<Chromosome>(candidates.size());
+        for (Candidate candidate : candidates) {
+            chromosomes.add(candidate.chromosome());
+        }
+        return chromosomes;
+    }
+
+    /**
+     * Writes this checkpoint to {@code file}. The checkpoint is first written
+     * to a temporary file which then replaces {@code file}, so an existing
+     * checkpoint is never left half written.
+     */
+    void write(File file) throws IOException {
+        ByteBuffer buffer = encode();
+        Path target = file.toPath();
+        Path temp = new File(file.getPath() + ".tmp").toPath();
+
+        FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads a checkpoint previously written with {@link #write(File)}.
+     */
+    static Checkpoint read(File file) throws IOException {
+        ByteBuffer buffer;
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a checkpoint file: " + file);
+            }
+            buffer = ByteBuffer.allocate((int)size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Unexpected end of checkpoint file: " + file);
+                }
+            }
+            buffer.flip();
+        } finally {
+            channel.close();
+        }
+
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a checkpoint file: " + file);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported checkpoint version " + version + ": " + file);
+        }
+
+        int generationNum = buffer.getInt();
+        long rngState = buffer.getLong();
+        long rngGamma = buffer.getLong();
+        Candidate[] candidates;
+        try {
+            candidates = new Candidate[buffer.getInt()];
+            for (int i = 0; i < candidates.length; ++i) {
+                double fitness = buffer.getDouble();
+                candidates[i] = new CandidateImpl(fitness, ChromosomeCodec.read(buffer));
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid checkpoint file: " + file, e);
+        }
+        return new Checkpoint(generationNum, rngState, rngGamma,
+                Collections.unmodifiableList(Arrays.asList(candidates)));
+    }
+
+    private ByteBuffer encode() {
+        int size = HEADER_SIZE;
+        for (Candidate candidate : candidates) {
+            size += 8 + ChromosomeCodec.encodedSize(candidate.chromosome());
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC)
+              .putInt(VERSION)
+              .putInt(generationNum)
+              .putLong(rngState)
+              .putLong(rngGamma)
+              .putInt(candidates.size());
+        for (Candidate candidate : candidates) {
+            buffer.putDouble(candidate.fitness());
+            ChromosomeCodec.write(candidate.chromosome(), buffer);
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
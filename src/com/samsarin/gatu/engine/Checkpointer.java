@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+package com.samsarin.gatu.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.samsarin.gatu.primitive.Candidate;
+import com.samsarin.gatu.primitive.Rng;
+
+/**
+ * Periodically writes {@link Checkpoint}s for a running engine. Checkpoints
+ * are written on a background thread so the engine does not wait for the
+ * disk. If the previous checkpoint is still being written when the next one
+ * is due, the new checkpoint is skipped.
+ *
+ * @author chris@samsarin.com
+ */
+/* package private */ class Checkpointer {
+    private final File file;
+    private final int interval;
+    private ExecutorService writer;
+    private Future<?> pending;
+
+    Checkpointer(File file, int interval) {
+        this.file = file;
+        this.interval = interval;
+    }
+
+    /**
+     * Writes a checkpoint if one is due at {@code generationNum}. The state of
+     * {@code random} is captured before this method returns. If writing the
+     * previous checkpoint failed, its exception is rethrown.
+     */
+    void onGeneration(int generationNum, List<Candidate> candidates, Rng random) {
+        if (generationNum % interval != 0) {
+            return;
+        }
+        if (pending != null) {
+            if (!pending.isDone()) {
+                return;
+            }
+            Tasks.await(pending);
+        }
+
+        // The candidates are written after the engine has moved on, so they
+        // must not depend on storage the engine reuses
+        List<Candidate> detached = new ArrayList<Candidate>(candidates.size());
+        for (Candidate candidate : candidates) {
+            detached.add(EngineImpl.detach(candidate));
+        }
+        final Checkpoint checkpoint = new Checkpoint(generationNum, random, detached);
+        if (writer == null) {
+            writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "gatu-checkpoint");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        pending = writer.submit(new Runnable() {
+            public void run() {
+                try {
+                    checkpoint.write(file);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not write checkpoint to " + file, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for the last checkpoint to be written and stops the background
+     * thread.
+     */
+    void close() {
+        try {
+            if (pending != null) {
+                Tasks.await(pending);
+            }
+        } finally {
+            if (writer != null) {
+                writer.shutdown();
+            }
+            writer = null;
+            pending = null;
+        }
+    }
+}
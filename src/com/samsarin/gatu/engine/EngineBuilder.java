@@ -3,16 +3,23 @@
  */
 package com.samsarin.gatu.engine;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
+import com.samsarin.gatu.op.AsyncFitnessOp;
+import com.samsarin.gatu.op.BatchSelectionOp;
 import com.samsarin.gatu.op.CrossoverOp;
 import com.samsarin.gatu.op.FitnessOp;
 import com.samsarin.gatu.op.MutationOp;
 import com.samsarin.gatu.op.Ops;
 import com.samsarin.gatu.op.SelectionOp;
+import com.samsarin.gatu.op.SortedSelectionOp;
 import com.samsarin.gatu.op.TerminationOp;
 import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.Rng;
 
 /**
  * An object that can build and configure new {@link Engine} instances. This
@@ -42,6 +49,18 @@ public class EngineBuilder {
     private TerminationOp terminationOp;
     private List<EngineListener> listeners;
     private int numBestToKeep;
+    private ExecutorService executor;
+    private int chunkSize;
+    private boolean parallelBreeding;
+    private int numReplacements;
+    private AsyncFitnessOp asyncFitnessOp;
+    private int maxInFlight;
+    private long seed;
+    private File checkpointFile;
+    private int checkpointInterval;
+    private Checkpoint resumeFrom;
+    private boolean offHeap;
+    private boolean partialSort;
 
     /**
      * Creates a new engine builder.
@@ -58,6 +77,31 @@ public class EngineBuilder {
         this.terminationOp = Ops.terminateAtGeneration(1000);
         this.listeners = new ArrayList<EngineListener>();
         this.numBestToKeep = 2;
+        this.seed = Rng.fromEntropy().nextLong();
+    }
+
+    /**
+     * Creates a new engine builder that resumes the run saved in a checkpoint
+     * file. The engine starts from the checkpoint's population, generation
+     * number and random number generator state, without evaluating the
+     * population again.
+     * <p/>
+     * Operations are not saved in a checkpoint, so the returned builder must
+     * be configured with the same operations as the original run for the
+     * run to continue exactly as it would have. Only the generational engine
+     * can resume from a checkpoint.
+     *
+     * @param checkpointFile a file written by a previous run
+     * @param fitnessOp the strategy for evaluating chromosome fitness
+     * @return a new engine builder
+     * @throws IOException if the checkpoint could not be read
+     * @see #setCheckpoint(File, int)
+     */
+    public static EngineBuilder fromCheckpoint(File checkpointFile, FitnessOp fitnessOp) throws IOException {
+        Checkpoint checkpoint = Checkpoint.read(checkpointFile);
+        EngineBuilder builder = new EngineBuilder(checkpoint.chromosomes(), fitnessOp);
+        builder.resumeFrom = checkpoint;
+        return builder;
     }
 
     /**
@@ -129,12 +173,252 @@ public class EngineBuilder {
         return this;
     }
 
+    /**
+     * Sets an executor that is used to evaluate fitness in parallel. The
+     * population is split into chunks of {@code chunkSize} chromosomes and
+     * each chunk is evaluated as a single task on the executor. Any
+     * {@link ExecutorService} may be used, including a
+     * {@link java.util.concurrent.ForkJoinPool}.
+     * <p/>
+     * The {@link FitnessOp} must be thread safe when an executor is used. The
+     * executor is not shut down by the engine.
+     * <p/>
+     * In steady-state mode only the initial population is evaluated on the
+     * executor. Asynchronous mode does not use it.
+     *
+     * @param executor the executor used to evaluate fitness
+     * @param chunkSize the number of chromosomes evaluated per task
+     * @return this EngineBuilder
+     * @throws IllegalArgumentException if {@code chunkSize < 1}
+     */
+    public EngineBuilder setExecutor(ExecutorService executor, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1. Actual: " + chunkSize);
+        }
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Determines whether offspring are bred in parallel on the executor set
+     * with {@link #setExecutor(ExecutorService, int)}. Breeding is split into
+     * tasks of {@code chunkSize} children and each task is given its own
+     * random number generator, so the children bred for a given seed and
+     * chunk size are the same no matter how many threads the executor uses.
+     * <p/>
+     * The selection, crossover and mutation ops must be thread safe when
+     * breeding in parallel. This setting has no effect unless an executor is
+     * set, and is not used in steady-state or asynchronous mode.
+     *
+     * @param parallelBreeding {@code true} to breed offspring in parallel
+     * @return this EngineBuilder
+     */
+    public EngineBuilder setParallelBreeding(boolean parallelBreeding) {
+        this.parallelBreeding = parallelBreeding;
+        return this;
+    }
+
+    /**
+     * Determines whether the population is kept off the Java heap. Each
+     * generation is copied into one of two direct buffers, which the engine
+     * alternates between, with all chromosomes stored contiguously at a fixed
+     * stride. The population then costs no more heap than a view object per
+     * slot, which is reused from one generation to the next. All chromosomes
+     * in the population must have the same length.
+     * <p/>
+     * The chromosomes given to listeners are views that are overwritten two
+     * generations later. Listeners that keep chromosomes should copy them
+     * with {@link com.samsarin.gatu.primitive.Chromosomes#detach(Chromosome)}.
+     * The best candidate returned by the engine is already detached. This
+     * setting is only used by the generational and island engines.
+     *
+     * @param offHeap {@code true} to keep the population off heap
+     * @return this EngineBuilder
+     * @see com.samsarin.gatu.primitive.PopulationStore
+     */
+    public EngineBuilder setOffHeapPopulation(boolean offHeap) {
+        this.offHeap = offHeap;
+        return this;
+    }
+
+    /**
+     * Determines whether the engine only orders the candidates it needs to.
+     * By default each generation is fully sorted. With a partial sort the
+     * engine finds the best candidates it needs (at least one, and at least
+     * the number of best candidates to keep) in linear time and sorts only
+     * those. They are at the end of the candidate list, from least to most
+     * fit, and the other candidates come before them in no particular order.
+     * <p/>
+     * The whole generation is still sorted if the selection op is a
+     * {@link SortedSelectionOp}. Listeners given a partly ordered list should
+     * not rely on the order of the candidates other than the best.
+     *
+     * @param partialSort {@code true} to only order the best candidates
+     * @return this EngineBuilder
+     */
+    public EngineBuilder setPartialSort(boolean partialSort) {
+        this.partialSort = partialSort;
+        return this;
+    }
+
+    /**
+     * Sets the seed for the engine's random number generator. Every run of an
+     * engine built with the same seed and configuration makes the same random
+     * choices, so a run can be replayed exactly. Asynchronous and island
+     * engines also depend on the order in which evaluations complete, so they
+     * are only repeatable if that order is. If no seed is set a random seed
+     * is chosen when the builder is created.
+     *
+     * @param seed the seed for the random number generator
+     * @return this EngineBuilder
+     */
+    public EngineBuilder setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Saves the engine's state to {@code checkpointFile} every
+     * {@code interval} generations. A checkpoint holds the population, its
+     * fitness values, the generation number and the state of the random
+     * number generator, in a compact binary format. Checkpoints are written
+     * on a background thread and replace the previous checkpoint atomically.
+     * If the previous checkpoint is still being written when the next one is
+     * due, the new one is skipped.
+     * <p/>
+     * Use {@link #fromCheckpoint(File, FitnessOp)} to resume a run. Only the
+     * generational engine writes checkpoints.
+     *
+     * @param checkpointFile the file to write checkpoints to
+     * @param interval the number of generations between checkpoints
+     * @return this EngineBuilder
+     * @throws IllegalArgumentException if {@code interval < 1}
+     */
+    public EngineBuilder setCheckpoint(File checkpointFile, int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("interval must be at least 1. Actual: " + interval);
+        }
+        this.checkpointFile = checkpointFile;
+        this.checkpointInterval = interval;
+        return this;
+    }
+
+    /**
+     * Switches the engine to steady-state mode. Instead of breeding a new
+     * generation at once, a steady-state engine breeds {@code numReplacements}
+     * children at each step and uses them to replace the least fit candidates
+     * in the population. The population is kept in an ordered structure
+     * that tracks the cumulative fitness of its candidates, so with the
+     * roulette wheel and tournament selection ops each step costs O(log n)
+     * per replaced candidate. A {@link BatchSelectionOp} would pass over the
+     * whole population for every pair of parents, so it can not be used in
+     * this mode.
+     * <p/>
+     * A steady-state engine counts a generation each time it has replaced as
+     * many candidates as there are in the population. Listeners and the
+     * termination op are consulted once per generation. The number of best
+     * candidates to keep is not used in this mode.
+     * <p/>
+     * Children are bred and evaluated one at a time on the calling thread.
+     * An executor set with {@link #setExecutor(ExecutorService, int)} only
+     * evaluates the initial population.
+     *
+     * @param numReplacements the number of candidates to replace at each step
+     * @return this EngineBuilder
+     * @throws IllegalArgumentException if {@code numReplacements < 1}
+     */
+    public EngineBuilder setSteadyState(int numReplacements) {
+        if (numReplacements < 1) {
+            throw new IllegalArgumentException("numReplacements must be at least 1. Actual: "
+                    + numReplacements);
+        }
+        this.numReplacements = numReplacements;
+        return this;
+    }
+
+    /**
+     * Switches the engine to asynchronous mode. An asynchronous engine keeps up
+     * to {@code maxInFlight} fitness evaluations running at once. As soon as
+     * an evaluation completes, its candidate replaces the least fit candidate
+     * in the population and a new child is bred and submitted. There is no
+     * barrier between generations, so fast evaluations are never held up by
+     * slow ones.
+     * <p/>
+     * Fitness is evaluated with {@code asyncFitnessOp} instead of the
+     * {@link FitnessOp} given to the constructor. Use
+     * {@link Ops#asyncFitness(FitnessOp, java.util.concurrent.Executor)} to
+     * run an ordinary fitness op asynchronously. Generations are counted as
+     * in steady-state mode, and as in that mode a {@link BatchSelectionOp}
+     * can not be used.
+     *
+     * @param asyncFitnessOp the strategy for evaluating chromosome fitness
+     * @param maxInFlight the maximum number of evaluations to run at once
+     * @return this EngineBuilder
+     * @throws IllegalArgumentException if {@code maxInFlight < 1}
+     * @see #setSteadyState(int)
+     */
+    public EngineBuilder setAsyncFitness(AsyncFitnessOp asyncFitnessOp, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1. Actual: " + maxInFlight);
+        }
+        this.asyncFitnessOp = asyncFitnessOp;
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
     /**
      * Returns a new {@link Engine} using the configuration set on this builder.
      *
      * @return a new {@link Engine}
+     * @throws IllegalStateException if checkpoints or a {@link BatchSelectionOp}
+     *         are used in steady-state or asynchronous mode, or if an
+     *         off-heap population has chromosomes of different lengths
      */
     public Engine build() {
+        if ((asyncFitnessOp != null || numReplacements > 0) && (checkpointFile != null || resumeFrom != null)) {
+            throw new IllegalStateException("Checkpoints are only supported by the generational engine");
+        }
+        if ((asyncFitnessOp != null || numReplacements > 0) && selectionOp instanceof BatchSelectionOp) {
+            throw new IllegalStateException("Batch selection is not supported in steady-state or asynchronous mode");
+        }
+        if (asyncFitnessOp != null) {
+            return new AsyncEngine(buildEngineImpl(), initialPopulation, asyncFitnessOp, maxInFlight);
+        }
+        if (numReplacements > 0) {
+            return new SteadyStateEngine(buildEngineImpl(), numReplacements);
+        }
+        return buildEngineImpl();
+    }
+
+    /* package private */ long seed() {
+        return seed;
+    }
+
+    /**
+     * Returns {@code true} if this builder writes checkpoints or resumes from
+     * one.
+     */
+    /* package private */ boolean usesCheckpoints() {
+        return checkpointFile != null || resumeFrom != null;
+    }
+
+    /* package private */ EngineImpl buildEngineImpl() {
+        return buildEngineImpl(seed, 0);
+    }
+
+    /**
+     * Builds the engine with the given seed, ordering at least
+     * {@code minToOrder} of the best candidates of each generation.
+     */
+    /* package private */ EngineImpl buildEngineImpl(long seed, int minToOrder) {
+        if (offHeap) {
+            for (Chromosome chromosome : initialPopulation) {
+                if (chromosome.length() != initialPopulation.get(0).length()) {
+                    throw new IllegalStateException("An off-heap population requires chromosomes of the same length");
+                }
+            }
+        }
         return new EngineImpl(initialPopulation,
                               fitnessOp,
                               selectionOp,
@@ -142,6 +426,25 @@ public class EngineBuilder {
                               mutationOps,
                               terminationOp,
                               listeners,
-                              numBestToKeep);
+                              numBestToKeep,
+                              executor,
+                              chunkSize,
+                              parallelBreeding,
+                              seed,
+                              checkpointFile != null ? new Checkpointer(checkpointFile, checkpointInterval) : null,
+                              resumeFrom,
+                              offHeap,
+                              numToOrder(minToOrder));
+    }
+
+    /**
+     * Returns the number of the best candidates the engine must order in each
+     * generation.
+     */
+    private int numToOrder(int minToOrder) {
+        if (!partialSort || selectionOp instanceof SortedSelectionOp) {
+            return Integer.MAX_VALUE;
+        }
+        return Math.max(1, Math.max(numBestToKeep, minToOrder));
     }
 }
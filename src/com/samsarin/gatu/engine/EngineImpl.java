@@ -6,15 +6,27 @@ package com.samsarin.gatu.engine;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
+import com.samsarin.gatu.op.BatchSelectionOp;
+import com.samsarin.gatu.op.BoundedFitnessOp;
 import com.samsarin.gatu.op.CrossoverOp;
+import com.samsarin.gatu.op.Evaluation;
 import com.samsarin.gatu.op.FitnessOp;
+import com.samsarin.gatu.op.IncrementalFitnessOp;
 import com.samsarin.gatu.op.MutationOp;
+import com.samsarin.gatu.op.OrdinalSelectionOp;
+import com.samsarin.gatu.op.PreparedSelectionOp;
 import com.samsarin.gatu.op.SelectionOp;
 import com.samsarin.gatu.op.TerminationOp;
 import com.samsarin.gatu.primitive.Candidate;
 import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.Chromosomes;
+import com.samsarin.gatu.primitive.Derivation;
+import com.samsarin.gatu.primitive.IndexedCandidateList;
 import com.samsarin.gatu.primitive.Pair;
+import com.samsarin.gatu.primitive.PopulationStore;
+import com.samsarin.gatu.primitive.Rng;
 
 /**
  * @author chris@samsarin.com
@@ -22,89 +34,440 @@ import com.samsarin.gatu.primitive.Pair;
 /* package private */class EngineImpl implements Engine {
     private final List<Chromosome> initialPopulation;
     private final FitnessOp fitnessOp;
+    private final IncrementalFitnessOp<Object> incrementalFitnessOp;
+    private final BoundedFitnessOp boundedFitnessOp;
     private final SelectionOp selectionOp;
     private final CrossoverOp crossoverOp;
     private final List<MutationOp> mutationOps;
     private final TerminationOp terminationOp;
     private final List<EngineListener> listeners;
     private final int numBestToKeep;
+    private final ExecutorService executor;
+    private final int chunkSize;
+    private final boolean parallelBreeding;
+    private final long seed;
+    private final Checkpointer checkpointer;
+    private final Checkpoint resumeFrom;
+    private final boolean offHeap;
+    private final int numToOrder;
+
+    /**
+     * When the population is kept off heap, the store holding the current
+     * generation and the store the next generation is written to.
+     */
+    private PopulationStore current;
+    private PopulationStore next;
 
     EngineImpl(List<Chromosome> initialPopulation, FitnessOp fitnessOp,
             SelectionOp selectionOp, CrossoverOp crossoverOp,
             List<MutationOp> mutationOps, TerminationOp terminationOp,
-            List<EngineListener> listeners, int numBestToKeep) {
+            List<EngineListener> listeners, int numBestToKeep,
+            ExecutorService executor, int chunkSize, boolean parallelBreeding, long seed,
+            Checkpointer checkpointer, Checkpoint resumeFrom, boolean offHeap, int numToOrder) {
         this.initialPopulation = Collections.unmodifiableList(new ArrayList<Chromosome>(initialPopulation));
         this.fitnessOp = fitnessOp;
+        this.incrementalFitnessOp = incremental(fitnessOp);
+        this.boundedFitnessOp = bounded(fitnessOp, selectionOp, numBestToKeep);
         this.selectionOp = selectionOp;
         this.crossoverOp = crossoverOp;
         this.mutationOps = Collections.unmodifiableList(new ArrayList<MutationOp>(mutationOps));
         this.terminationOp = terminationOp;
         this.listeners = Collections.unmodifiableList(new ArrayList<EngineListener>(listeners));
         this.numBestToKeep = numBestToKeep;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.parallelBreeding = parallelBreeding && executor != null;
+        this.seed = seed;
+        this.checkpointer = checkpointer;
+        this.resumeFrom = resumeFrom;
+        this.offHeap = offHeap;
+        this.numToOrder = numToOrder;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static IncrementalFitnessOp<Object> incremental(FitnessOp fitnessOp) {
+        return fitnessOp instanceof IncrementalFitnessOp ? (IncrementalFitnessOp<Object>)fitnessOp : null;
+    }
+
+    /**
+     * Returns {@code fitnessOp} if the engine can evaluate offspring against a
+     * cutoff. That needs elites to take the cutoff from and a selection op
+     * that only compares fitness values. An incremental fitness op keeps the
+     * state of each evaluation, so it is never cut short.
+     */
+    private static BoundedFitnessOp bounded(FitnessOp fitnessOp, SelectionOp selectionOp, int numBestToKeep) {
+        return fitnessOp instanceof BoundedFitnessOp && !(fitnessOp instanceof IncrementalFitnessOp)
+                && selectionOp instanceof OrdinalSelectionOp && numBestToKeep > 0
+                ? (BoundedFitnessOp)fitnessOp
+                : null;
     }
 
     public Candidate call() {
-        List<Chromosome> population = initialPopulation;
-        int generationNum = 0;
+        Rng random;
+        int generationNum;
+        List<Candidate> candidates;
+        if (resumeFrom != null) {
+            random = resumeFrom.random();
+            generationNum = resumeFrom.generationNum();
+            candidates = resumeFrom.candidates();
+        } else {
+            random = newRng();
+            generationNum = 0;
+            candidates = initialCandidates();
+        }
+
+        try {
+            while (!done(generationNum, bestCandidate(candidates))) {
+                notifyListeners(generationNum, bestCandidate(candidates), candidates);
+
+                generationNum++;
+                candidates = nextGeneration(candidates, random);
+                if (checkpointer != null) {
+                    checkpointer.onGeneration(generationNum, candidates, random);
+                }
+            }
+        } catch (Throwable t) {
+            // A checkpoint that fails to write must not hide why the run
+            // stopped
+            if (checkpointer != null) {
+                try {
+                    checkpointer.close();
+                } catch (Throwable closeFailure) {
+                    t.addSuppressed(closeFailure);
+                }
+            }
+            throw t;
+        }
+        if (checkpointer != null) {
+            checkpointer.close();
+        }
+
+        return detach(bestCandidate(candidates));
+    }
+
+    /**
+     * Returns a new random number generator seeded with this engine's seed.
+     * Each run of the engine starts from a new generator, so runs with the
+     * same seed and configuration make the same random choices.
+     */
+    /* package private */ Rng newRng() {
+        return new Rng(seed);
+    }
+
+    /**
+     * Returns the evaluated and sorted candidates for the initial population.
+     */
+    /* package private */ List<Candidate> initialCandidates() {
+        return getCandidates(initialPopulation.toArray(new Chromosome[initialPopulation.size()]), null,
+                Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Breeds the next generation from {@code candidates} and returns its
+     * evaluated and sorted candidates.
+     */
+    /* package private */ Population nextGeneration(List<Candidate> candidates, Rng random) {
+        Chromosome[] nextGen = createNextGen(candidates.size() - numBestToKeep, candidates, random);
+        addBestToNextGen(candidates, nextGen);
+        double cutoff = getCutoff(candidates);
+        Lineage[] lineages = incrementalFitnessOp != null ? findLineages(nextGen, candidates) : null;
+        if (offHeap) {
+            storeOffHeap(nextGen);
+        }
+        return getCandidates(nextGen, lineages, cutoff);
+    }
+
+    /**
+     * Returns the fitness below which offspring of {@code candidates} only
+     * need an upper bound: that of the worst elite. The elites are carried
+     * into the next generation, so its elites, its best candidate and the
+     * ordering of every candidate at or above the cutoff are still exact.
+     * Returns negative infinity if the fitness op is not evaluated against
+     * a cutoff.
+     */
+    private double getCutoff(List<Candidate> candidates) {
+        if (boundedFitnessOp == null) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        int index = candidates.size() - numBestToKeep;
+        return candidates instanceof IndexedCandidateList
+                ? ((IndexedCandidateList)candidates).fitness(index)
+                : candidates.get(index).fitness();
+    }
 
-        List<Candidate> candidates = getCandidates(population);
-        while (!done(generationNum, bestCandidate(candidates))) {
-            notifyListeners(generationNum, bestCandidate(candidates), candidates);
+    /**
+     * Where a chromosome in the next generation came from in the previous
+     * one, for incremental evaluation.
+     */
+    private static final class Lineage {
+        /**
+         * How the chromosome was derived from its parent, or {@code null} if
+         * it is the parent itself.
+         */
+        final Derivation derivation;
+        final Evaluation<Object> parentEvaluation;
 
-            generationNum++;
-            List<Chromosome> nextGen = createNextGen(population.size() - numBestToKeep, candidates);
-            addBestToNextGen(candidates, nextGen);
-            population = nextGen;
-            candidates = getCandidates(population);
+        Lineage(Derivation derivation, Evaluation<Object> parentEvaluation) {
+            this.derivation = derivation;
+            this.parentEvaluation = parentEvaluation;
         }
+    }
 
-        return bestCandidate(candidates);
+    /**
+     * Finds the lineage of each chromosome in {@code chromosomes} whose parent
+     * is in {@code candidates}. Returns {@code null} if the previous
+     * generation has no evaluations to start from.
+     */
+    private Lineage[] findLineages(Chromosome[] chromosomes, List<Candidate> candidates) {
+        if (!(candidates instanceof Population)) {
+            return null;
+        }
+        Population parents = (Population)candidates;
+        Lineage[] lineages = new Lineage[chromosomes.length];
+        for (int i = 0; i < chromosomes.length; ++i) {
+            Evaluation<Object> evaluation = parents.evaluation(chromosomes[i]);
+            Derivation derivation;
+            if (evaluation != null) {
+                lineages[i] = new Lineage(null, evaluation);
+            } else if ((derivation = Chromosomes.derivation(chromosomes[i])) != null
+                    && (evaluation = parents.evaluation(derivation.parent())) != null) {
+                lineages[i] = new Lineage(derivation, evaluation);
+            }
+        }
+        return lineages;
     }
 
-    private List<Candidate> getCandidates(List<Chromosome> chromosomes) {
-        List<Candidate> candidates = new ArrayList<Candidate>(chromosomes
-                .size());
-        for (Chromosome chromosome : chromosomes) {
-            Candidate candidate = new CandidateImpl(fitnessOp
-                    .fitness(chromosome), chromosome);
-            candidates.add(candidate);
+    /**
+     * Copies {@code chromosomes} into the next off-heap store and replaces
+     * each with its view in the store. The stores are swapped, so the store
+     * holding the previous generation is overwritten by the generation after
+     * this one.
+     */
+    private void storeOffHeap(Chromosome[] chromosomes) {
+        if (next == null || next.capacity() < chromosomes.length) {
+            int length = chromosomes[0].length();
+            current = new PopulationStore(chromosomes.length, length);
+            next = new PopulationStore(chromosomes.length, length);
         }
-        Collections.sort(candidates);
-        return candidates;
+
+        for (int i = 0; i < chromosomes.length; ++i) {
+            next.set(i, chromosomes[i]);
+            chromosomes[i] = next.get(i);
+        }
+
+        PopulationStore swap = current;
+        current = next;
+        next = swap;
+    }
+
+    /**
+     * Returns {@code candidate} with a chromosome that does not depend on the
+     * engine's off-heap stores, so it can be kept after the next generation.
+     */
+    /* package private */ static Candidate detach(Candidate candidate) {
+        Chromosome chromosome = Chromosomes.detach(candidate.chromosome());
+        if (chromosome == candidate.chromosome()) {
+            return candidate;
+        }
+        return new CandidateImpl(candidate.fitness(), chromosome);
     }
 
-    private Candidate bestCandidate(List<Candidate> candidates) {
+    /**
+     * Evaluates {@code chromosomes} and returns them as a {@link Population}
+     * in which at least the best {@code numToOrder} candidates are ordered.
+     * The array is kept by the population. {@code lineages} may be
+     * {@code null}, in which case an incremental fitness op evaluates each
+     * chromosome from scratch. Chromosomes less fit than {@code cutoff} may
+     * only have an upper bound as their fitness; the population records them
+     * as bounds and evaluates them in full if their exact fitness is needed.
+     */
+    private Population getCandidates(Chromosome[] chromosomes, Lineage[] lineages, double cutoff) {
+        double[] fitness = new double[chromosomes.length];
+        Object[] states = null;
+        if (incrementalFitnessOp != null) {
+            states = new Object[chromosomes.length];
+            // Offspring of the population record how they were derived. A
+            // tracking chromosome has no derivation itself, so it no longer
+            // refers to the previous generation, which can be collected.
+            for (int i = 0; i < chromosomes.length; ++i) {
+                chromosomes[i] = Chromosomes.trackDerivations(chromosomes[i]);
+            }
+        }
+        if (executor == null) {
+            evaluate(chromosomes, lineages, fitness, states, cutoff, 0, fitness.length);
+        } else {
+            evaluateInParallel(chromosomes, lineages, fitness, states, cutoff);
+        }
+        if (boundedFitnessOp != null) {
+            return new Population(chromosomes, fitness, numToOrder, cutoff, boundedFitnessOp);
+        }
+        return new Population(chromosomes, fitness, states, numToOrder);
+    }
+
+    /**
+     * Splits the population into chunks of {@code chunkSize} chromosomes and
+     * evaluates each chunk on the executor. Each chunk writes to its own
+     * slots in {@code fitness}, so the result is the same as a serial
+     * evaluation.
+     */
+    private void evaluateInParallel(final Chromosome[] chromosomes, final Lineage[] lineages,
+            final double[] fitness, final Object[] states, final double cutoff) {
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        for (int i = 0; i < fitness.length; i += chunkSize) {
+            final int fromIndex = i;
+            final int toIndex = Math.min(i + chunkSize, fitness.length);
+            tasks.add(new Runnable() {
+                public void run() {
+                    evaluate(chromosomes, lineages, fitness, states, cutoff, fromIndex, toIndex);
+                }
+            });
+        }
+        Tasks.invokeAll(executor, tasks);
+    }
+
+    private void evaluate(Chromosome[] chromosomes, Lineage[] lineages, double[] fitness, Object[] states,
+            double cutoff, int fromIndex, int toIndex) {
+        for (int i = fromIndex; i < toIndex; ++i) {
+            if (boundedFitnessOp != null) {
+                fitness[i] = boundedFitnessOp.fitness(chromosomes[i], cutoff);
+            } else if (states == null) {
+                fitness[i] = fitnessOp.fitness(chromosomes[i]);
+            } else {
+                Evaluation<Object> evaluation = evaluate(chromosomes[i], lineages != null ? lineages[i] : null);
+                fitness[i] = evaluation.fitness();
+                states[i] = evaluation.state();
+            }
+        }
+    }
+
+    /**
+     * Evaluates {@code chromosome} with the incremental fitness op, starting
+     * from its parent's evaluation if {@code lineage} is not {@code null}. A
+     * chromosome that is its parent keeps the parent's evaluation.
+     */
+    private Evaluation<Object> evaluate(Chromosome chromosome, Lineage lineage) {
+        if (lineage == null) {
+            return incrementalFitnessOp.evaluate(chromosome);
+        }
+        if (lineage.derivation == null) {
+            return lineage.parentEvaluation;
+        }
+        return incrementalFitnessOp.evaluate(chromosome, lineage.derivation.parent(), lineage.parentEvaluation,
+                lineage.derivation.changes());
+    }
+
+    /**
+     * Returns a candidate for {@code chromosome} with its fitness evaluated.
+     */
+    /* package private */ Candidate evaluate(Chromosome chromosome) {
+        return new CandidateImpl(fitnessOp.fitness(chromosome), chromosome);
+    }
+
+    /* package private */ Candidate bestCandidate(List<Candidate> candidates) {
         return candidates.get(candidates.size() - 1);
     }
 
-    private boolean done(int generationNum, Candidate bestCandidate) {
+    /* package private */ boolean done(int generationNum, Candidate bestCandidate) {
         return terminationOp.shouldTerminate(generationNum, bestCandidate);
     }
 
-    private void notifyListeners(int generationNum, Candidate bestCandidate,
+    /* package private */ void notifyListeners(int generationNum, Candidate bestCandidate,
             List<Candidate> candidates) {
         for (EngineListener listener : listeners) {
             listener.onGeneration(generationNum, bestCandidate, candidates);
         }
     }
 
-    private List<Chromosome> createNextGen(int size, List<Candidate> candidates) {
-        List<Chromosome> chromosomes = new ArrayList<Chromosome>(size);
+    /**
+     * Breeds {@code size} children, rounded down to an even number, into the
+     * front of a new array that has room at the end for the best candidates.
+     */
+    private Chromosome[] createNextGen(int size, List<Candidate> candidates, Rng random) {
+        int numPairs = size / 2;
+        Chromosome[] chromosomes = new Chromosome[numPairs * 2 + numBestToKeep];
 
         double fitnessSum = getFitnessSum(candidates);
+        SelectionOp selector = selectionOp instanceof PreparedSelectionOp
+                ? ((PreparedSelectionOp)selectionOp).prepare(candidates, fitnessSum)
+                : selectionOp;
 
-        int numPairs = size / 2;
-        for (int i = 0; i < numPairs; ++i) {
-            Pair<Chromosome> pair = selectPair(candidates, fitnessSum);
-            pair = crossoverOp.crossover(pair);
-            chromosomes.add(mutate(pair.first()));
-            chromosomes.add(mutate(pair.second()));
+        if (parallelBreeding) {
+            breedInParallel(selector, candidates, fitnessSum, numPairs, chromosomes, random);
+        } else {
+            breed(selectParents(selector, candidates, fitnessSum, numPairs * 2, random), chromosomes, 0, random);
         }
 
         return chromosomes;
     }
 
+    /**
+     * Splits the pairs to breed into tasks of {@code chunkSize} children and
+     * breeds each task on the executor. Each task is given its own generator,
+     * split from {@code random} in task order, and writes its children to its
+     * own slots in {@code chromosomes}. The children therefore depend only on
+     * the seed and the chunk size, not on the number of threads or the order
+     * in which the tasks run.
+     * <p/>
+     * A {@link BatchSelectionOp} still selects all parents at once on the
+     * calling thread; any other selection op selects each task's parents
+     * within the task.
+     */
+    private void breedInParallel(final SelectionOp selector, final List<Candidate> candidates,
+            final double fitnessSum, int numPairs, final Chromosome[] chromosomes, Rng random) {
+        final List<Chromosome> allParents = selector instanceof BatchSelectionOp
+                ? selectParents(selector, candidates, fitnessSum, numPairs * 2, random)
+                : null;
+
+        int pairsPerTask = Math.max(1, chunkSize / 2);
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        for (int i = 0; i < numPairs; i += pairsPerTask) {
+            final int fromIndex = 2 * i;
+            final int toIndex = 2 * Math.min(i + pairsPerTask, numPairs);
+            final Rng taskRandom = random.split();
+            tasks.add(new Runnable() {
+                public void run() {
+                    List<Chromosome> parents = allParents != null
+                            ? allParents.subList(fromIndex, toIndex)
+                            : selectParents(selector, candidates, fitnessSum, toIndex - fromIndex, taskRandom);
+                    breed(parents, chromosomes, fromIndex, taskRandom);
+                }
+            });
+        }
+        Tasks.invokeAll(executor, tasks);
+    }
+
+    /**
+     * Breeds each even-odd pair of {@code parents} and writes the children to
+     * {@code chromosomes}, starting at {@code offset}.
+     */
+    private void breed(List<Chromosome> parents, Chromosome[] chromosomes, int offset, Rng random) {
+        for (int i = 0; i + 1 < parents.size(); i += 2) {
+            Pair<Chromosome> pair = breed(new Pair<Chromosome>(parents.get(i), parents.get(i + 1)), random);
+            chromosomes[offset + i] = pair.first();
+            chromosomes[offset + i + 1] = pair.second();
+        }
+    }
+
+    /**
+     * Selects two parents from {@code candidates} and returns their children
+     * after crossover and mutation. The children do not refer to their
+     * parents, so replaced candidates can be collected.
+     */
+    /* package private */ Pair<Chromosome> breed(List<Candidate> candidates, double fitnessSum, Rng random) {
+        List<Chromosome> parents = selectParents(selectionOp, candidates, fitnessSum, 2, random);
+        Pair<Chromosome> children = breed(new Pair<Chromosome>(parents.get(0), parents.get(1)), random);
+        return new Pair<Chromosome>(Chromosomes.detach(children.first()), Chromosomes.detach(children.second()));
+    }
+
+    private Pair<Chromosome> breed(Pair<Chromosome> parents, Rng random) {
+        Pair<Chromosome> pair = crossoverOp.crossover(parents, random);
+        return new Pair<Chromosome>(mutate(pair.first(), random), mutate(pair.second(), random));
+    }
+
     private double getFitnessSum(List<Candidate> candidates) {
+        if (candidates instanceof Population) {
+            return ((Population)candidates).fitnessSum();
+        }
         double sum = 0;
         for (Candidate candidate : candidates) {
             sum += candidate.fitness();
@@ -112,25 +475,74 @@ import com.samsarin.gatu.primitive.Pair;
         return sum;
     }
 
-    private Pair<Chromosome> selectPair(List<Candidate> candidates, double fitnessSum) {
-        Chromosome first = selectionOp.select(candidates, fitnessSum);
-        Chromosome second;
-        do {
-            second = selectionOp.select(candidates, fitnessSum);
-        } while (first == second);
-        return new Pair<Chromosome>(first, second);
+    /**
+     * Selects {@code numParents} parents with {@code selector}, where each
+     * even-odd pair of parents will be mated.
+     */
+    private static List<Chromosome> selectParents(SelectionOp selector, List<Candidate> candidates,
+            double fitnessSum, int numParents, Rng random) {
+        List<Chromosome> parents;
+        if (selector instanceof BatchSelectionOp) {
+            parents = ((BatchSelectionOp)selector).selectAll(candidates, fitnessSum, numParents, random);
+        } else {
+            parents = new ArrayList<Chromosome>(numParents);
+            for (int i = 0; i < numParents; ++i) {
+                parents.add(selector.select(candidates, fitnessSum, random));
+            }
+        }
+        pairParents(parents);
+        return parents;
+    }
+
+    /**
+     * Reorders {@code parents} so that, where possible, no chromosome is mated
+     * with itself. If the two parents of a pair are the same chromosome the
+     * second is swapped with the next parent later in the list that differs.
+     * If there is no such parent the pair is left as it is.
+     * <p/>
+     * When one chromosome dominates the list, each of its pairs would scan
+     * the same run of copies again. Instead the scan resumes where the last
+     * scan for the same chromosome ended, and stops for good once a scan
+     * reaches the end of the list, so the reordering takes linear time.
+     */
+    private static void pairParents(List<Chromosome> parents) {
+        // Every parent from the current pair up to scanFrom is scanned
+        Chromosome scanned = null;
+        int scanFrom = 0;
+        for (int i = 0; i + 1 < parents.size(); i += 2) {
+            Chromosome first = parents.get(i);
+            if (parents.get(i + 1) != first) {
+                continue;
+            }
+
+            int j = first == scanned ? Math.max(i + 2, scanFrom) : i + 2;
+            while (j < parents.size() && parents.get(j) == first) {
+                ++j;
+            }
+            if (j == parents.size()) {
+                // Every later parent is this chromosome, so no pair can change
+                return;
+            }
+            parents.set(i + 1, parents.get(j));
+            parents.set(j, first);
+            scanned = first;
+            scanFrom = j + 1;
+        }
     }
 
-    private Chromosome mutate(Chromosome chromosome) {
+    private Chromosome mutate(Chromosome chromosome, Rng random) {
         for (MutationOp mutationOp : mutationOps) {
-            chromosome = mutationOp.mutate(chromosome);
+            chromosome = mutationOp.mutate(chromosome, random);
         }
         return chromosome;
     }
 
-    private void addBestToNextGen(List<Candidate> candidates, List<Chromosome> nextGen) {
+    private void addBestToNextGen(List<Candidate> candidates, Chromosome[] nextGen) {
         for (int i = 0; i < numBestToKeep; ++i) {
-            nextGen.add(candidates.get(candidates.size() - i - 1).chromosome());
+            int index = candidates.size() - i - 1;
+            nextGen[nextGen.length - numBestToKeep + i] = candidates instanceof IndexedCandidateList
+                    ? ((IndexedCandidateList)candidates).chromosome(index)
+                    : candidates.get(index).chromosome();
         }
     }
 }
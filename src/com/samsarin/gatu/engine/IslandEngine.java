@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+package com.samsarin.gatu.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.samsarin.gatu.primitive.Candidate;
+import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.Rng;
+
+/**
+ * An engine that runs several {@link EngineImpl} islands on separate threads.
+ * Islands exchange migrants through non-blocking queues, so no island ever
+ * waits for another.
+ *
+ * @author chris@samsarin.com
+ */
+/* package private */ class IslandEngine implements Engine {
+    private final List<EngineImpl> islands;
+    private final int migrationInterval;
+    private final int numMigrants;
+    private final MigrationTopology topology;
+    private final ExecutorService executor;
+
+    IslandEngine(List<EngineImpl> islands, int migrationInterval, int numMigrants,
+            MigrationTopology topology, ExecutorService executor) {
+        this.islands = Collections.unmodifiableList(new ArrayList<EngineImpl>(islands));
+        this.migrationInterval = migrationInterval;
+        this.numMigrants = numMigrants;
+        this.topology = topology;
+        this.executor = executor;
+    }
+
+    public Candidate call() {
+        final List<Queue<Candidate>> inboxes = new ArrayList<Queue<Candidate>>(islands.size());
+        for (int i = 0; i < islands.size(); ++i) {
+            inboxes.add(new ConcurrentLinkedQueue<Candidate>());
+        }
+
+        final Candidate[] bestCandidates = new Candidate[islands.size()];
+        List<Runnable> tasks = new ArrayList<Runnable>(islands.size());
+        for (int i = 0; i < islands.size(); ++i) {
+            final int islandNum = i;
+            tasks.add(new Runnable() {
+                public void run() {
+                    bestCandidates[islandNum] = runIsland(islandNum, inboxes);
+                }
+            });
+        }
+
+        if (executor != null) {
+            Tasks.invokeAll(executor, tasks);
+        } else {
+            ExecutorService islandExecutor = Executors.newFixedThreadPool(islands.size());
+            try {
+                Tasks.invokeAll(islandExecutor, tasks);
+            } finally {
+                islandExecutor.shutdown();
+            }
+        }
+
+        Candidate best = bestCandidates[0];
+        for (Candidate candidate : bestCandidates) {
+            if (candidate.compareTo(best) > 0) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private Candidate runIsland(int islandNum, List<Queue<Candidate>> inboxes) {
+        EngineImpl island = islands.get(islandNum);
+        Rng random = island.newRng();
+        int generationNum = 0;
+
+        List<Candidate> candidates = island.initialCandidates();
+        while (!island.done(generationNum, island.bestCandidate(candidates))) {
+            island.notifyListeners(generationNum, island.bestCandidate(candidates), candidates);
+
+            generationNum++;
+            Population population = island.nextGeneration(candidates, random);
+
+            if (generationNum % migrationInterval == 0) {
+                emigrate(population, inboxes.get(destination(islandNum, random)));
+                population = immigrate(population, inboxes.get(islandNum));
+            }
+            candidates = population;
+        }
+
+        return EngineImpl.detach(island.bestCandidate(candidates));
+    }
+
+    private int destination(int islandNum, Rng random) {
+        int numIslands = islands.size();
+        if (numIslands == 1) {
+            return islandNum;
+        }
+
+        switch (topology) {
+            case RANDOM:
+                int destination = random.nextInt(numIslands - 1);
+                return destination >= islandNum ? destination + 1 : destination;
+            case RING:
+            default:
+                return (islandNum + 1) % numIslands;
+        }
+    }
+
+    private void emigrate(List<Candidate> candidates, Queue<Candidate> destination) {
+        int count = Math.min(numMigrants, candidates.size());
+        for (int i = 0; i < count; ++i) {
+            // The receiving island keeps migrants beyond this island's generation
+            destination.offer(EngineImpl.detach(candidates.get(candidates.size() - i - 1)));
+        }
+    }
+
+    /**
+     * Merges the waiting migrants into the population. Migrants whose
+     * chromosome is already in the population are ignored. The population
+     * keeps its size, so the least fit candidates are dropped.
+     */
+    private Population immigrate(Population population, Queue<Candidate> inbox) {
+        Set<Chromosome> chromosomes = new HashSet<Chromosome>();
+        for (int i = 0; i < population.size(); ++i) {
+            chromosomes.add(population.chromosome(i));
+        }
+
+        List<Candidate> migrants = new ArrayList<Candidate>();
+        Candidate migrant;
+        while ((migrant = inbox.poll()) != null) {
+            if (chromosomes.add(migrant.chromosome())) {
+                migrants.add(migrant);
+            }
+        }
+
+        return migrants.isEmpty() ? population : population.withMigrants(migrants);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+package com.samsarin.gatu.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import com.samsarin.gatu.primitive.Rng;
+
+/**
+ * An object that can build and configure island model {@link Engine}
+ * instances. An island model engine runs several independent populations
+ * (islands), each on its own thread. Every few generations each island sends
+ * copies of its best candidates to another island.
+ * <p/>
+ * Each island is configured with its own {@link EngineBuilder}, so islands
+ * may use different selection, crossover and mutation strategies. All islands
+ * should use the same fitness function because migrants keep the fitness they
+ * were given on their original island.
+ * Islands cannot write or resume from checkpoints.
+ * <p/>
+ * <pre>
+ * {@code
+ * IslandEngineBuilder builder = new IslandEngineBuilder()
+ *     .addIsland(new EngineBuilder(population1, fitnessOp))
+ *     .addIsland(new EngineBuilder(population2, fitnessOp)
+ *         .setSelectionOp(Ops.tournamentSelection(3)))
+ *     .setMigrationInterval(20)
+ *     .setNumMigrants(2)
+ *     .setTopology(MigrationTopology.RING);
+ *
+ * Engine engine = builder.build();
+ * }
+ * </pre>
+ *
+ * @author chris@samsarin.com
+ */
+public class IslandEngineBuilder {
+    private final List<EngineBuilder> islands;
+    private int migrationInterval;
+    private int numMigrants;
+    private MigrationTopology topology;
+    private ExecutorService executor;
+    private Long seed;
+
+    /**
+     * Creates a new island engine builder with no islands.
+     */
+    public IslandEngineBuilder() {
+        this.islands = new ArrayList<EngineBuilder>();
+        this.migrationInterval = 10;
+        this.numMigrants = 2;
+        this.topology = MigrationTopology.RING;
+    }
+
+    /**
+     * Adds a new island. The island runs until its own
+     * {@link com.samsarin.gatu.op.TerminationOp} says it should terminate and
+     * its listeners are notified on the island's thread.
+     *
+     * @param island the configuration for the island
+     * @return this IslandEngineBuilder
+     */
+    public IslandEngineBuilder addIsland(EngineBuilder island) {
+        this.islands.add(island);
+        return this;
+    }
+
+    /**
+     * Sets the number of generations an island runs between migrations.
+     *
+     * @param migrationInterval the number of generations between migrations
+     * @return this IslandEngineBuilder
+     * @throws IllegalArgumentException if {@code migrationInterval < 1}
+     */
+    public IslandEngineBuilder setMigrationInterval(int migrationInterval) {
+        if (migrationInterval < 1) {
+            throw new IllegalArgumentException("migrationInterval must be at least 1. Actual: "
+                    + migrationInterval);
+        }
+        this.migrationInterval = migrationInterval;
+        return this;
+    }
+
+    /**
+     * Sets the number of best candidates that an island sends to another
+     * island each time it migrates.
+     *
+     * @param numMigrants the number of candidates to migrate
+     * @return this IslandEngineBuilder
+     */
+    public IslandEngineBuilder setNumMigrants(int numMigrants) {
+        this.numMigrants = numMigrants;
+        return this;
+    }
+
+    /**
+     * Sets the topology that determines where each island sends its migrants.
+     *
+     * @param topology the migration topology
+     * @return this IslandEngineBuilder
+     */
+    public IslandEngineBuilder setTopology(MigrationTopology topology) {
+        this.topology = topology;
+        return this;
+    }
+
+    /**
+     * Sets the executor used to run the islands. The executor must be able to
+     * run all islands at the same time. If no executor is set the engine
+     * creates a thread for each island while it runs.
+     *
+     * @param executor the executor used to run the islands
+     * @return this IslandEngineBuilder
+     */
+    public IslandEngineBuilder setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Sets a master seed for the islands. Each island is given its own
+     * generator split from the master seed, overriding any seed set on the
+     * island's {@link EngineBuilder}. Because islands run concurrently, the
+     * arrival of migrants is not repeatable even with a fixed seed.
+     *
+     * @param seed the master seed
+     * @return this IslandEngineBuilder
+     * @see EngineBuilder#setSeed(long)
+     */
+    public IslandEngineBuilder setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Returns a new {@link Engine} using the configuration set on this builder.
+     *
+     * @return a new {@link Engine}
+     * @throws IllegalStateException if no islands have been added, or if an
+     *         island writes checkpoints or resumes from one
+     */
+    public Engine build() {
+        if (islands.isEmpty()) {
+            throw new IllegalStateException("At least one island is required");
+        }
+        for (EngineBuilder island : islands) {
+            if (island.usesCheckpoints()) {
+                throw new IllegalStateException("Checkpoints are not supported by the island engine");
+            }
+        }
+
+        List<EngineImpl> engines = new ArrayList<EngineImpl>(islands.size());
+        Rng master = seed != null ? new Rng(seed) : null;
+        for (EngineBuilder island : islands) {
+            // Migrants are taken from the best candidates, so those must be ordered
+            long islandSeed = master != null ? master.split().nextLong() : island.seed();
+            engines.add(island.buildEngineImpl(islandSeed, numMigrants));
+        }
+        return new IslandEngine(engines, migrationInterval, numMigrants, topology, executor);
+    }
+}
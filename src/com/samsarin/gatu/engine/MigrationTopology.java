@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+package com.samsarin.gatu.engine;
+
+/**
+ * Determines which island receives the migrants from another island in an
+ * island model engine.
+ *
+ * @see IslandEngineBuilder
+ * @author chris@samsarin.com
+ */
+public enum MigrationTopology {
+    /**
+     * The islands are arranged in a ring. Island {@code i} sends its
+     * migrants to island {@code i + 1} and the last island sends its
+     * migrants to the first island.
+     */
+    RING,
+
+    /**
+     * Each time an island migrates it sends its migrants to a randomly
+     * chosen island other than itself.
+     */
+    RANDOM
+}
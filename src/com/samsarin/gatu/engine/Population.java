@@ -0,0 +1,420 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+package com.samsarin.gatu.engine;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.samsarin.gatu.op.BoundedFitnessOp;
+import com.samsarin.gatu.op.Evaluation;
+import com.samsarin.gatu.primitive.BoundedCandidateList;
+import com.samsarin.gatu.primitive.Candidate;
+import com.samsarin.gatu.primitive.Chromosome;
+
+/**
+ * An evaluated generation, ordered from least to most fit. The fitness values
+ * are kept in a {@code double[]} parallel to the chromosomes, and the order is
+ * kept as a permutation of their indices, so no {@link Candidate} objects are
+ * created unless {@link #get(int)} is called.
+ * <p/>
+ * A population may be only partly ordered: if only the best {@code k}
+ * candidates are needed, they are found with a quickselect in linear time
+ * and only they are sorted. They are at the end of the list, from least to
+ * most fit, and the other candidates come before them in no particular order.
+ * <p/>
+ * A population evaluated by an {@link com.samsarin.gatu.op.IncrementalFitnessOp}
+ * also keeps the state of each evaluation, which can be looked up by
+ * chromosome to evaluate the next generation incrementally.
+ * <p/>
+ * A population evaluated against a cutoff (see
+ * {@link com.samsarin.gatu.op.BoundedFitnessOp}) treats every fitness below
+ * the cutoff as an upper bound. It is ordered by those bounds, but the
+ * exact fitness of a bounded candidate is evaluated when it is first asked
+ * for, including by {@link #get(int)}, so listeners and checkpoints only
+ * ever see exact fitness. A bounded candidate can also be evaluated again
+ * against a higher cutoff, such as the fitness of a tournament opponent,
+ * which keeps the tighter bound if it falls short.
+ * <p/>
+ * When the whole population is sorted, candidates with the same fitness keep
+ * the order in which they were given. Instances are immutable.
+ *
+ * @author chris@samsarin.com
+ */
+/* package private */ class Population extends AbstractList<Candidate>
+        implements BoundedCandidateList, RandomAccess {
+
+    /**
+     * Runs shorter than this are sorted with an insertion sort.
+     */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private final Chromosome[] chromosomes;
+    private final double[] fitness;
+    private final int[] order;
+    private final int numToOrder;
+    private final double fitnessSum;
+
+    /**
+     * The state of each evaluation, parallel to the chromosomes, and the index
+     * of each chromosome by identity. Both are {@code null} if the population
+     * was not evaluated incrementally.
+     */
+    private final Object[] states;
+    private final Map<Chromosome, Integer> indices;
+
+    /**
+     * The fitness below which values are only upper bounds, and the op that
+     * evaluates bounded candidates again. The cutoff is negative infinity
+     * and the op {@code null} if no value is a bound.
+     */
+    private final double cutoff;
+    private final BoundedFitnessOp boundedFitnessOp;
+
+    /**
+     * The raw bits of the exact fitness of each bounded candidate, parallel
+     * to the chromosomes, or {@link #UNKNOWN} if it has not been evaluated.
+     * {@code null} if no value is a bound.
+     */
+    private final AtomicLongArray exactFitness;
+
+    /**
+     * The raw bits of the least upper bound found so far for each candidate,
+     * parallel to the chromosomes. Only lowered. {@code null} if no value is
+     * a bound.
+     */
+    private final AtomicLongArray bounds;
+    private static final long UNKNOWN = Double.doubleToRawLongBits(Double.NaN);
+
+    /**
+     * Creates a fully sorted population from chromosomes and their fitness, in
+     * any order. The arrays are not copied and must not be changed afterwards.
+     */
+    Population(Chromosome[] chromosomes, double[] fitness) {
+        this(chromosomes, fitness, fitness.length);
+    }
+
+    /**
+     * Creates a population in which only the best {@code numToOrder}
+     * candidates are in order. The arrays are not copied and must not be
+     * changed afterwards.
+     */
+    Population(Chromosome[] chromosomes, double[] fitness, int numToOrder) {
+        this(chromosomes, fitness, null, numToOrder);
+    }
+
+    /**
+     * Creates a population in which only the best {@code numToOrder}
+     * candidates are in order, keeping the state of each candidate's
+     * evaluation. {@code states} may be {@code null}. The arrays are not
+     * copied and must not be changed afterwards.
+     */
+    Population(Chromosome[] chromosomes, double[] fitness, Object[] states, int numToOrder) {
+        this(chromosomes, fitness, states, numToOrder, Double.NEGATIVE_INFINITY, null);
+    }
+
+    /**
+     * Creates a population in which only the best {@code numToOrder}
+     * candidates are in order and each fitness below {@code cutoff} is only
+     * an upper bound. Bounded candidates are evaluated again by
+     * {@code boundedFitnessOp} when their exact fitness, or a tighter bound,
+     * is needed. The arrays are not copied and must not be changed
+     * afterwards.
+     */
+    Population(Chromosome[] chromosomes, double[] fitness, int numToOrder, double cutoff,
+            BoundedFitnessOp boundedFitnessOp) {
+        this(chromosomes, fitness, null, numToOrder, cutoff, boundedFitnessOp);
+    }
+
+    private Population(Chromosome[] chromosomes, double[] fitness, Object[] states, int numToOrder,
+            double cutoff, BoundedFitnessOp boundedFitnessOp) {
+        assert chromosomes.length == fitness.length;
+        assert states == null || states.length == fitness.length;
+        assert boundedFitnessOp != null || cutoff == Double.NEGATIVE_INFINITY;
+        this.chromosomes = chromosomes;
+        this.fitness = fitness;
+        this.states = states;
+        this.cutoff = cutoff;
+        this.boundedFitnessOp = boundedFitnessOp;
+        this.order = new int[fitness.length];
+        this.numToOrder = numToOrder;
+
+        AtomicLongArray exact = null;
+        AtomicLongArray known = null;
+        for (int i = 0; i < fitness.length && exact == null; ++i) {
+            if (fitness[i] < cutoff) {
+                exact = new AtomicLongArray(fitness.length);
+                known = new AtomicLongArray(fitness.length);
+                for (int j = 0; j < fitness.length; ++j) {
+                    exact.set(j, UNKNOWN);
+                    known.set(j, Double.doubleToRawLongBits(fitness[j]));
+                }
+            }
+        }
+        this.exactFitness = exact;
+        this.bounds = known;
+
+        if (states != null) {
+            indices = new IdentityHashMap<Chromosome, Integer>(chromosomes.length * 2);
+            for (int i = 0; i < chromosomes.length; ++i) {
+                indices.put(chromosomes[i], i);
+            }
+        } else {
+            indices = null;
+        }
+
+        double sum = 0;
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+            sum += fitness[i];
+        }
+        this.fitnessSum = sum;
+
+        int from = 0;
+        if (numToOrder < order.length) {
+            from = order.length - Math.max(0, numToOrder);
+            select(from);
+        }
+        int[] scratch = new int[order.length];
+        System.arraycopy(order, from, scratch, from, order.length - from);
+        sort(order, scratch, from, order.length);
+    }
+
+    public double fitness(int index) {
+        return fitness[order[index]];
+    }
+
+    public Chromosome chromosome(int index) {
+        return chromosomes[order[index]];
+    }
+
+    public boolean isBound(int index) {
+        return fitness[order[index]] < cutoff;
+    }
+
+    public double exactFitness(int index) {
+        return exactFitnessOf(order[index]);
+    }
+
+    public double fitness(int index, double cutoff) {
+        int i = order[index];
+        if (!(fitness[i] < this.cutoff)) {
+            return fitness[i];
+        }
+        long bits = exactFitness.get(i);
+        if (bits != UNKNOWN) {
+            return Double.longBitsToDouble(bits);
+        }
+        double bound = Double.longBitsToDouble(bounds.get(i));
+        if (bound < cutoff) {
+            return bound;
+        }
+
+        // Only fitness at or above the cutoff is exact. Below it the op
+        // returns a bound less than the cutoff, which is at most the known one.
+        double result = boundedFitnessOp.fitness(chromosomes[i], cutoff);
+        if (!(result < cutoff)) {
+            exactFitness.set(i, Double.doubleToRawLongBits(result));
+            return result;
+        }
+        long resultBits = Double.doubleToRawLongBits(result);
+        while (true) {
+            long knownBits = bounds.get(i);
+            if (Double.longBitsToDouble(knownBits) <= result || bounds.compareAndSet(i, knownBits, resultBits)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Returns the exact fitness of the chromosome at {@code i}, in the order
+     * the chromosomes were given. Two threads may both evaluate the same
+     * candidate, but they store the same value.
+     */
+    private double exactFitnessOf(int i) {
+        if (!(fitness[i] < cutoff)) {
+            return fitness[i];
+        }
+        long bits = exactFitness.get(i);
+        if (bits != UNKNOWN) {
+            return Double.longBitsToDouble(bits);
+        }
+        double exact = boundedFitnessOp.fitness(chromosomes[i]);
+        exactFitness.set(i, Double.doubleToRawLongBits(exact));
+        return exact;
+    }
+
+    /**
+     * Returns the evaluation of {@code chromosome}, which must be the same
+     * instance as a chromosome in this population, or {@code null} if it is
+     * not in the population or the population was not evaluated
+     * incrementally.
+     */
+    Evaluation<Object> evaluation(Chromosome chromosome) {
+        if (indices == null) {
+            return null;
+        }
+        Integer index = indices.get(chromosome);
+        return index != null ? new Evaluation<Object>(fitness[index], states[index]) : null;
+    }
+
+    /**
+     * Returns a population of the same size that holds the fittest of this
+     * population's candidates and {@code migrants}, none of which may already
+     * be in this population. Candidates are compared by their fitness as it is
+     * kept here, so bounds are not evaluated in full. The candidates that are
+     * kept keep their evaluations; migrants have none, so their offspring are
+     * evaluated from scratch.
+     */
+    Population withMigrants(List<Candidate> migrants) {
+        int size = order.length;
+        int numMigrants = migrants.size();
+        Chromosome[] allChromosomes = Arrays.copyOf(chromosomes, size + numMigrants);
+        double[] allFitness = Arrays.copyOf(fitness, size + numMigrants);
+        for (int i = 0; i < numMigrants; ++i) {
+            allChromosomes[size + i] = migrants.get(i).chromosome();
+            allFitness[size + i] = migrants.get(i).fitness();
+        }
+
+        // Order the fittest of both, then keep as many as there were before
+        int[] kept = Arrays.copyOfRange(new Population(allChromosomes, allFitness, size).order,
+                numMigrants, size + numMigrants);
+        Chromosome[] keptChromosomes = new Chromosome[size];
+        double[] keptFitness = new double[size];
+        Object[] keptStates = states != null ? new Object[size] : null;
+        for (int i = 0; i < size; ++i) {
+            keptChromosomes[i] = allChromosomes[kept[i]];
+            keptFitness[i] = allFitness[kept[i]];
+            if (keptStates != null && kept[i] < size) {
+                keptStates[i] = states[kept[i]];
+            }
+        }
+
+        Population population = new Population(keptChromosomes, keptFitness, keptStates, numToOrder, cutoff,
+                boundedFitnessOp);
+        for (int i = 0; i < size; ++i) {
+            if (kept[i] >= size) {
+                // A migrant's fitness is exact, but it has no evaluation
+                if (population.indices != null) {
+                    population.indices.remove(keptChromosomes[i]);
+                }
+                if (population.exactFitness != null) {
+                    population.exactFitness.set(i, Double.doubleToRawLongBits(keptFitness[i]));
+                }
+            } else if (exactFitness != null && population.exactFitness != null) {
+                population.exactFitness.set(i, exactFitness.get(kept[i]));
+                population.bounds.set(i, bounds.get(kept[i]));
+            }
+        }
+        return population;
+    }
+
+    /**
+     * Returns the sum of each candidate's fitness, counting bounds as they
+     * are.
+     */
+    double fitnessSum() {
+        return fitnessSum;
+    }
+
+    /**
+     * Returns a new candidate for the chromosome at {@code index}, with its
+     * exact fitness.
+     */
+    public Candidate get(int index) {
+        int i = order[index];
+        return new CandidateImpl(exactFitnessOf(i), chromosomes[i]);
+    }
+
+    public int size() {
+        return order.length;
+    }
+
+    /**
+     * Rearranges {@link #order} so that the index at {@code k} is the one that
+     * would be there if the whole population were sorted, with no greater
+     * fitness before it and no lesser fitness after it. Uses quickselect with
+     * a median of three pivot, which takes linear time on average.
+     */
+    private void select(int k) {
+        int left = 0;
+        int right = order.length - 1;
+        while (right > left) {
+            int mid = (left + right) >>> 1;
+            if (compare(mid, left) < 0) swap(mid, left);
+            if (compare(right, left) < 0) swap(right, left);
+            if (compare(right, mid) < 0) swap(right, mid);
+            double pivot = fitness[order[mid]];
+
+            // Hoare partition around the pivot's fitness
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (Double.compare(fitness[order[i]], pivot) < 0) ++i;
+                while (Double.compare(fitness[order[j]], pivot) > 0) --j;
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private int compare(int i, int j) {
+        return Double.compare(fitness[order[i]], fitness[order[j]]);
+    }
+
+    private void swap(int i, int j) {
+        int tmp = order[i];
+        order[i] = order[j];
+        order[j] = tmp;
+    }
+
+    /**
+     * Stable merge sort of {@code indices} from {@code from}, inclusive, to
+     * {@code to}, exclusive, by fitness. {@code scratch} must hold the same
+     * values as {@code indices} in that range.
+     */
+    private void sort(int[] indices, int[] scratch, int from, int to) {
+        if (to - from < INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; ++i) {
+                int index = indices[i];
+                int j = i;
+                for (; j > from && Double.compare(fitness[indices[j - 1]], fitness[index]) > 0; --j) {
+                    indices[j] = indices[j - 1];
+                }
+                indices[j] = index;
+            }
+            return;
+        }
+
+        // Sort each half of scratch, then merge the halves back into indices
+        int mid = (from + to) >>> 1;
+        sort(scratch, indices, from, mid);
+        sort(scratch, indices, mid, to);
+
+        if (Double.compare(fitness[scratch[mid - 1]], fitness[scratch[mid]]) <= 0) {
+            System.arraycopy(scratch, from, indices, from, to - from);
+            return;
+        }
+        for (int i = from, left = from, right = mid; i < to; ++i) {
+            if (right >= to || (left < mid && Double.compare(fitness[scratch[left]], fitness[scratch[right]]) <= 0)) {
+                indices[i] = scratch[left++];
+            } else {
+                indices[i] = scratch[right++];
+            }
+        }
+    }
+}
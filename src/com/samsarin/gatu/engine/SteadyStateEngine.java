@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+package com.samsarin.gatu.engine;
+
+import com.samsarin.gatu.primitive.Candidate;
+import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.Pair;
+import com.samsarin.gatu.primitive.Rng;
+
+/**
+ * An engine that replaces only a few candidates at each step instead of
+ * breeding a whole new generation. The population is kept in a
+ * {@link CandidateTree}, so with a selection op that looks at O(1)
+ * candidates, or finds one by cumulative fitness, each step costs O(log n)
+ * per replaced candidate rather than a full evaluation and sort of the
+ * population. Batch selection ops, which pass over every candidate, are
+ * rejected by {@link EngineBuilder#build()}.
+ * <p/>
+ * Each step breeds {@code numReplacements} children, which replace the least
+ * fit candidates in the population. Once as many children as there are
+ * candidates in the population have been added, the generation number is
+ * incremented, listeners are notified and the termination op is consulted.
+ *
+ * @author chris@samsarin.com
+ */
+/* package private */ class SteadyStateEngine implements Engine {
+    private final EngineImpl engine;
+    private final int numReplacements;
+
+    SteadyStateEngine(EngineImpl engine, int numReplacements) {
+        this.engine = engine;
+        this.numReplacements = numReplacements;
+    }
+
+    public Candidate call() {
+        Rng random = engine.newRng();
+        CandidateTree population = new CandidateTree();
+        for (Candidate candidate : engine.initialCandidates()) {
+            population.add(candidate);
+        }
+
+        int generationNum = 0;
+        while (!engine.done(generationNum, engine.bestCandidate(population))) {
+            engine.notifyListeners(generationNum, engine.bestCandidate(population), population.snapshot());
+
+            generationNum++;
+            for (int replaced = 0; replaced < population.size(); replaced += numReplacements) {
+                step(population, random);
+            }
+        }
+
+        return engine.bestCandidate(population);
+    }
+
+    private void step(CandidateTree population, Rng random) {
+        Candidate[] children = new Candidate[numReplacements];
+        for (int i = 0; i < numReplacements; i += 2) {
+            Pair<Chromosome> pair = engine.breed(population, population.fitnessSum(), random);
+            children[i] = engine.evaluate(pair.first());
+            if (i + 1 < numReplacements) {
+                children[i + 1] = engine.evaluate(pair.second());
+            }
+        }
+
+        for (Candidate child : children) {
+            population.remove(0);
+            population.add(child);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+package com.samsarin.gatu.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Helper methods for running engine work on an {@link ExecutorService}.
+ *
+ * @author chris@samsarin.com
+ */
+/* package private */ class Tasks {
+
+    private Tasks() {}
+
+    /**
+     * Runs each task on {@code executor} and waits for all of them to
+     * complete. If a task fails its exception is rethrown on the calling
+     * thread.
+     *
+     * @param executor the executor to run the tasks on
+     * @param tasks the tasks to run
+     */
+    static void invokeAll(ExecutorService executor, List<Runnable> tasks) {
+        List<Callable<Object>> callables = new ArrayList<Callable<Object>>(tasks.size());
+        for (Runnable task : tasks) {
+            callables.add(Executors.callable(task));
+        }
+
+        List<Future<Object>> futures;
+        try {
+            futures = executor.invokeAll(callables);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for engine tasks", e);
+        }
+        for (Future<Object> future : futures) {
+            await(future);
+        }
+    }
+
+    /**
+     * Waits for {@code future} to complete. If its task failed the exception
+     * is rethrown on the calling thread.
+     *
+     * @param future the future to wait for
+     */
+    static void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for engine tasks", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IllegalStateException("Engine task failed", cause);
+        }
+    }
+}
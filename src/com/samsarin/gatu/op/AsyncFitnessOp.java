@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.op;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.samsarin.gatu.primitive.Chromosome;
+
+/**
+ * An operation that generates a fitness value for a {@link Chromosome}
+ * asynchronously. This is useful when fitness evaluations are expensive and
+ * take widely varying amounts of time.
+ *
+ * @see FitnessOp
+ * @author chris@samsarin.com
+ */
+public interface AsyncFitnessOp {
+
+    /**
+     * Starts evaluating the fitness for {@code chromosome} and returns a
+     * future that completes with the fitness value. The larger the value, the
+     * more "fit" the chromosome.
+     * <p/>
+     * The fitness value must be deterministic. This function should always
+     * produce the same fitness value for the same chromosome.
+     *
+     * @param chromosome the chromosome to measure
+     * @return a future for the fitness value of this chromosome
+     */
+    CompletableFuture<Double> fitness(Chromosome chromosome);
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.op;
+
+import java.util.List;
+
+import com.samsarin.gatu.primitive.Candidate;
+import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.Rng;
+
+/**
+ * A {@link SelectionOp} that can choose every parent for a generation in a
+ * single pass over the population. The engine uses
+ * {@link #selectAll(List, double, int, Rng)} instead of calling
+ * {@link #select(List, double, Rng)} once per parent.
+ *
+ * @author chris@samsarin.com
+ */
+public interface BatchSelectionOp extends SelectionOp {
+
+    /**
+     * Given an ordered list of candidates (from least to most fit) this method
+     * returns {@code numToSelect} chromosomes in random order. The same
+     * chromosome may be returned more than once.
+     *
+     * @param candidates an ordered list candidates
+     * @param fitnessSum the sum of each candidate's fitness
+     * @param numToSelect the number of chromosomes to select
+     * @param random the source of randomness for this selection
+     * @return the selected chromosomes
+     */
+    List<Chromosome> selectAll(List<Candidate> candidates, double fitnessSum, int numToSelect, Rng random);
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.op;
+
+import com.samsarin.gatu.primitive.Chromosome;
+
+/**
+ * A {@link FitnessCache} for a {@link BoundedFitnessOp}, which is bounded
+ * itself. A miss passes the engine's cutoff on to the wrapped op. Only
+ * fitness values at or above the cutoff are exact, so an upper bound
+ * returned for a chromosome below the cutoff is not cached.
+ *
+ * @author chris@samsarin.com
+ */
+public class BoundedFitnessCache extends FitnessCache implements BoundedFitnessOp {
+    private final BoundedFitnessOp fitnessOp;
+
+    /**
+     * Creates a new cache for {@code fitnessOp} that holds up to
+     * {@code numToCache} chromosomes.
+     *
+     * @param fitnessOp the actual fitness op to run if the fitness is not cached
+     * @param numToCache the number of chromosomes to cache
+     * @throws IllegalArgumentException if {@code numToCache < 1}
+     */
+    public BoundedFitnessCache(BoundedFitnessOp fitnessOp, int numToCache) {
+        super(fitnessOp, numToCache);
+        this.fitnessOp = fitnessOp;
+    }
+
+    /**
+     * Creates a new cache for {@code fitnessOp} that holds up to
+     * {@code numToCache} chromosomes, split into about
+     * {@code concurrencyLevel} independently locked segments.
+     *
+     * @param fitnessOp the actual fitness op to run if the fitness is not cached
+     * @param numToCache the number of chromosomes to cache
+     * @param concurrencyLevel the expected number of threads using the cache
+     * @throws IllegalArgumentException if {@code numToCache < 1}
+     */
+    public BoundedFitnessCache(BoundedFitnessOp fitnessOp, int numToCache, int concurrencyLevel) {
+        super(fitnessOp, numToCache, concurrencyLevel);
+        this.fitnessOp = fitnessOp;
+    }
+
+    public double fitness(Chromosome chromosome, double cutoff) {
+        return cachedFitness(chromosome, cutoff);
+    }
+
+    @Override
+    /* package private */ double calculate(Chromosome chromosome, double cutoff) {
+        return cutoff == Double.NEGATIVE_INFINITY
+                ? fitnessOp.fitness(chromosome)
+                : fitnessOp.fitness(chromosome, cutoff);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.op;
+
+import com.samsarin.gatu.primitive.Chromosome;
+
+/**
+ * A {@link FitnessOp} that can stop evaluating a chromosome once it is known
+ * to be less fit than a cutoff. Engines pass the fitness a chromosome must
+ * reach to matter, such as the fitness of the worst elite, and a chromosome
+ * that falls short is given an upper bound on its fitness instead.
+ * <p/>
+ * An engine only uses the cutoff when its selection op is an
+ * {@link OrdinalSelectionOp}, because such an op ranks a bounded chromosome
+ * below every chromosome that reached the cutoff, just as it would have
+ * with the exact fitness, and only needs to know how bounded chromosomes
+ * compare with each other. A tournament evaluates the bounded entrant with
+ * the greatest bound in full with {@link #fitness(Chromosome)}, and each
+ * other entrant again with that entrant's fitness as the cutoff, so an
+ * entrant that falls short can still stop early. Any bounded chromosome
+ * that a listener or checkpoint reads is evaluated in full.
+ *
+ * @author chris@samsarin.com
+ */
+public interface BoundedFitnessOp extends FitnessOp {
+
+    /**
+     * Returns the fitness for {@code chromosome} if it is at least
+     * {@code cutoff}. Otherwise this method may stop early and return any
+     * value that is at least the fitness and less than {@code cutoff}.
+     * <p/>
+     * Like {@link #fitness(Chromosome)}, a fitness at or above the cutoff
+     * must be deterministic.
+     *
+     * @param chromosome the chromosome to measure
+     * @param cutoff the fitness below which only an upper bound is needed
+     * @return the fitness, or an upper bound less than {@code cutoff}
+     */
+    double fitness(Chromosome chromosome, double cutoff);
+}
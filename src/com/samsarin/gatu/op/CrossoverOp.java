@@ -6,6 +6,7 @@ package com.samsarin.gatu.op;
 
 import com.samsarin.gatu.primitive.Chromosome;
 import com.samsarin.gatu.primitive.Pair;
+import com.samsarin.gatu.primitive.Rng;
 
 /**
  * An operation that crosses-over (mates) two chromosomes and produces two
@@ -21,7 +22,8 @@ public interface CrossoverOp {
      * new chromosomes using genes selected from two parent chromosomes.
      *
      * @param pair the parent chromosomes
+     * @param random the source of randomness for this crossover
      * @return the child chromosomes created through crossover
      */
-    Pair<Chromosome> crossover(Pair<Chromosome> pair);
+    Pair<Chromosome> crossover(Pair<Chromosome> pair, Rng random);
 }
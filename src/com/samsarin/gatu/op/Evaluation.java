@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.op;
+
+/**
+ * The result of evaluating a chromosome with an {@link IncrementalFitnessOp}:
+ * its fitness and whatever state the op needs to evaluate the chromosome's
+ * children incrementally. Instances are immutable, although the state may not
+ * be.
+ *
+ * @param <S> the type of the evaluation state
+ * @author chris@samsarin.com
+ */
+public final class Evaluation<S> {
+    private final double fitness;
+    private final S state;
+
+    /**
+     * @param fitness the fitness of the chromosome
+     * @param state the state kept for incremental evaluation; may be
+     *        {@code null}
+     */
+    public Evaluation(double fitness, S state) {
+        this.fitness = fitness;
+        this.state = state;
+    }
+
+    /**
+     * Returns the fitness of the chromosome.
+     *
+     * @return the fitness
+     */
+    public double fitness() {
+        return fitness;
+    }
+
+    /**
+     * Returns the state kept for incremental evaluation.
+     *
+     * @return the state, or {@code null}
+     */
+    public S state() {
+        return state;
+    }
+
+    @Override
+    public String toString() {
+        return "Evaluation[fitness=" + fitness + ", state=" + state + "]";
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.op;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.Chromosomes;
+
+/**
+ * A thread safe {@link FitnessOp} wrapper that caches the fitness for
+ * chromosomes previously calculated. The cache holds at most a fixed number of
+ * chromosomes. When it is full the cache evicts entries using the CLOCK
+ * algorithm, an approximation of least recently used eviction that does not
+ * need to reorder entries on a cache hit.
+ * <p/>
+ * The cache is split into independently locked segments, so threads looking
+ * up different chromosomes rarely contend with each other. Fitness is
+ * calculated outside of any lock. If two threads miss on the same chromosome
+ * at the same time the fitness may be calculated twice.
+ * <p/>
+ * The hit, miss and eviction counters can be used to tune the size of the
+ * cache.
+ * <p/>
+ * This cache is not a {@link BoundedFitnessOp}, even if the wrapped op is,
+ * so an engine always evaluates in full through it. Use
+ * {@link BoundedFitnessCache} to pass the engine's cutoff on to a bounded op.
+ *
+ * @author chris@samsarin.com
+ */
+public class FitnessCache implements FitnessOp {
+    private final FitnessOp fitnessOp;
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    private static class Entry {
+        final Chromosome chromosome;
+        final double fitness;
+        final int slot;
+        boolean referenced;
+
+        Entry(Chromosome chromosome, double fitness, int slot) {
+            this.chromosome = chromosome;
+            this.fitness = fitness;
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * A part of the cache with its own lock, map and clock. All fields are
+     * guarded by the segment's lock.
+     */
+    private static class Segment extends ReentrantLock {
+        private static final long serialVersionUID = 1L;
+
+        final Map<Chromosome, Entry> entries;
+        final Entry[] clock;
+        int hand;
+        int size;
+        long hits;
+        long misses;
+        long evictions;
+
+        Segment(int capacity) {
+            entries = new HashMap<Chromosome, Entry>(capacity * 4 / 3 + 1);
+            clock = new Entry[capacity];
+        }
+
+        /**
+         * Returns the slot of the entry evicted to make room for a new entry.
+         */
+        int evict() {
+            while (true) {
+                Entry entry = clock[hand];
+                hand = (hand + 1) % clock.length;
+                if (entry.referenced) {
+                    entry.referenced = false;
+                } else {
+                    entries.remove(entry.chromosome);
+                    evictions++;
+                    return entry.slot;
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a new cache for {@code fitnessOp} that holds up to
+     * {@code numToCache} chromosomes.
+     *
+     * @param fitnessOp the actual fitness op to run if the fitness is not cached
+     * @param numToCache the number of chromosomes to cache
+     * @throws IllegalArgumentException if {@code numToCache < 1}
+     */
+    public FitnessCache(FitnessOp fitnessOp, int numToCache) {
+        this(fitnessOp, numToCache, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new cache for {@code fitnessOp} that holds up to
+     * {@code numToCache} chromosomes, split into about
+     * {@code concurrencyLevel} independently locked segments.
+     *
+     * @param fitnessOp the actual fitness op to run if the fitness is not cached
+     * @param numToCache the number of chromosomes to cache
+     * @param concurrencyLevel the expected number of threads using the cache
+     * @throws IllegalArgumentException if {@code numToCache < 1}
+     */
+    public FitnessCache(FitnessOp fitnessOp, int numToCache, int concurrencyLevel) {
+        if (numToCache < 1) {
+            throw new IllegalArgumentException("numToCache must be at least 1. Actual: " + numToCache);
+        }
+
+        int numSegments = 1;
+        while (numSegments < concurrencyLevel && numSegments * 2 <= numToCache) {
+            numSegments *= 2;
+        }
+
+        this.fitnessOp = fitnessOp;
+        this.segments = new Segment[numSegments];
+        this.segmentMask = numSegments - 1;
+        for (int i = 0; i < numSegments; ++i) {
+            int capacity = numToCache / numSegments + (i < numToCache % numSegments ? 1 : 0);
+            segments[i] = new Segment(capacity);
+        }
+    }
+
+    public double fitness(Chromosome chromosome) {
+        return cachedFitness(chromosome, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Returns the cached fitness for {@code chromosome}, or calculates it with
+     * {@link #calculate(Chromosome, double)}. A value below {@code cutoff} is
+     * only an upper bound, so it is not cached.
+     */
+    /* package private */ double cachedFitness(Chromosome chromosome, double cutoff) {
+        Segment segment = segmentFor(chromosome);
+
+        segment.lock();
+        try {
+            Entry entry = segment.entries.get(chromosome);
+            if (entry != null) {
+                entry.referenced = true;
+                segment.hits++;
+                return entry.fitness;
+            }
+            segment.misses++;
+        } finally {
+            segment.unlock();
+        }
+
+        double fitness = calculate(chromosome, cutoff);
+        if (fitness < cutoff) {
+            return fitness;
+        }
+
+        segment.lock();
+        try {
+            if (!segment.entries.containsKey(chromosome)) {
+                // The chromosome may be a view whose storage is reused
+                Chromosome key = Chromosomes.detach(chromosome);
+                int slot = segment.size < segment.clock.length ? segment.size++ : segment.evict();
+                Entry entry = new Entry(key, fitness, slot);
+                segment.clock[slot] = entry;
+                segment.entries.put(key, entry);
+            }
+        } finally {
+            segment.unlock();
+        }
+        return fitness;
+    }
+
+    /**
+     * Calculates the fitness for {@code chromosome} with the wrapped op on a
+     * cache miss. This cache ignores {@code cutoff}.
+     */
+    /* package private */ double calculate(Chromosome chromosome, double cutoff) {
+        return fitnessOp.fitness(chromosome);
+    }
+
+    /**
+     * Returns the number of chromosomes currently in the cache.
+     *
+     * @return the number of cached chromosomes
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                size += segment.size;
+            } finally {
+                segment.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of lookups that found a cached fitness.
+     *
+     * @return the number of cache hits
+     */
+    public long hits() {
+        long hits = 0;
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                hits += segment.hits;
+            } finally {
+                segment.unlock();
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that had to calculate the fitness.
+     *
+     * @return the number of cache misses
+     */
+    public long misses() {
+        long misses = 0;
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                misses += segment.misses;
+            } finally {
+                segment.unlock();
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * Returns the number of chromosomes evicted to make room for others.
+     *
+     * @return the number of evictions
+     */
+    public long evictions() {
+        long evictions = 0;
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                evictions += segment.evictions;
+            } finally {
+                segment.unlock();
+            }
+        }
+        return evictions;
+    }
+
+    private Segment segmentFor(Chromosome chromosome) {
+        // The map hashes the low bits, so pick the segment with the high bits
+        return segments[(int)(chromosome.fingerprint() >>> 48) & segmentMask];
+    }
+}
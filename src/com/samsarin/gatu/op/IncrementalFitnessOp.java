@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.op;
+
+import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.GeneRanges;
+
+/**
+ * A {@link FitnessOp} that can evaluate a child from its parent's evaluation
+ * and the ranges of genes that differ from the parent. For objectives that
+ * decompose over the genes this makes the cost of an evaluation proportional
+ * to the size of the change rather than to the length of the chromosome.
+ * <p/>
+ * The generational engine uses the incremental path whenever its fitness op
+ * implements this interface and a child is derived from a chromosome in the
+ * previous generation (see {@link com.samsarin.gatu.primitive.Derivation});
+ * the engine then tracks the derivations of its population, and the ops in
+ * {@link Ops} record their changes as they build each child. Other
+ * chromosomes are evaluated with {@link #evaluate(Chromosome)}. The
+ * steady-state and asynchronous engines only use {@link #fitness(Chromosome)}.
+ * <p/>
+ * A parent's state may be passed to several children, possibly on different
+ * threads, so it must not be changed: an evaluation that needs a different
+ * state must return a new one.
+ *
+ * @param <S> the type of the state kept with each evaluation
+ * @author chris@samsarin.com
+ */
+public interface IncrementalFitnessOp<S> extends FitnessOp {
+
+    /**
+     * Evaluates {@code chromosome} from scratch. The returned fitness must be
+     * the same as {@link #fitness(Chromosome)}.
+     *
+     * @param chromosome the chromosome to measure
+     * @return the fitness and state for the chromosome
+     */
+    Evaluation<S> evaluate(Chromosome chromosome);
+
+    /**
+     * Evaluates {@code chromosome}, which differs from {@code parent} only in
+     * the genes in {@code changes}. The returned fitness must be the same as
+     * {@link #fitness(Chromosome)} would return for {@code chromosome}.
+     *
+     * @param chromosome the chromosome to measure
+     * @param parent the chromosome it was derived from
+     * @param parentEvaluation the evaluation of {@code parent}
+     * @param changes the genes that may differ from {@code parent}
+     * @return the fitness and state for the chromosome
+     */
+    Evaluation<S> evaluate(Chromosome chromosome, Chromosome parent, Evaluation<S> parentEvaluation,
+            GeneRanges changes);
+}
@@ -5,6 +5,7 @@
 package com.samsarin.gatu.op;
 
 import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.Rng;
 
 /**
  * An operation that changes a chromosome in some way.
@@ -19,7 +20,8 @@ public interface MutationOp {
      * 
      * @param chromosome the chromosome to use as a basis for a new mutated
      *        chromosome
+     * @param random the source of randomness for this mutation
      * @return the mutated chromosome
      */
-    Chromosome mutate(Chromosome chromosome);
+    Chromosome mutate(Chromosome chromosome, Rng random);
 }
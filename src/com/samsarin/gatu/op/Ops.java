@@ -4,17 +4,19 @@
 
 package com.samsarin.gatu.op;
 
+import com.samsarin.gatu.primitive.BoundedCandidateList;
 import com.samsarin.gatu.primitive.Candidate;
-import com.samsarin.gatu.primitive.CandidateKey;
 import com.samsarin.gatu.primitive.Chromosome;
 import com.samsarin.gatu.primitive.ChromosomeBuilder;
+import com.samsarin.gatu.primitive.CumulativeCandidateList;
+import com.samsarin.gatu.primitive.IndexedCandidateList;
 import com.samsarin.gatu.primitive.Pair;
+import com.samsarin.gatu.primitive.Rng;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 /**
  * This class provides a set of static methods for creating common implementations
@@ -23,48 +25,44 @@ import java.util.Random;
  * @author chris@samsarin.com
  */
 public class Ops {
-    private static final Random random = new Random();
-
     private Ops() {}
 
-    private static class Cache<T1, T2> extends LinkedHashMap<T1, T2> {
-        private static final long serialVersionUID = -1;
-
-        private final int numToCache;
-
-        public Cache(int numToCache) {
-            super(numToCache, 0.75f, true);
-
-            this.numToCache = numToCache;
-        }
-
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<T1, T2> e) {
-            return size() > numToCache;
-        }
-    }
-
     /**
      * A {@link FitnessOp} wrapper that caches the fitness for chromosomes
      * previously calculated. Older fitness scores are purged as newer values
-     * are cached.
+     * are cached. The returned op is thread safe. If {@code fitnessOp} is a
+     * {@link BoundedFitnessOp}, so is the returned op.
      *
      * @param fitnessOp the actual fitness op to run if the fitness is not cached
      * @param numToCache the number of chromosomes to cache
      * @return the fitness op
+     * @see FitnessCache
+     * @see BoundedFitnessCache
      */
-    public static FitnessOp cachingFitness(final FitnessOp fitnessOp, int numToCache) {
-        final Cache<Chromosome, Double> cache = new Cache<Chromosome, Double>(numToCache);
-        return new FitnessOp() {
-            public double fitness(Chromosome chromosome) {
-                Double fitness = cache.get(chromosome);
-                if (fitness != null) {
-                    return fitness;
-                }
+    public static FitnessCache cachingFitness(FitnessOp fitnessOp, int numToCache) {
+        if (fitnessOp instanceof BoundedFitnessOp) {
+            return new BoundedFitnessCache((BoundedFitnessOp)fitnessOp, numToCache);
+        }
+        return new FitnessCache(fitnessOp, numToCache);
+    }
 
-                fitness = fitnessOp.fitness(chromosome);
-                cache.put(chromosome, fitness);
-                return fitness;
+    /**
+     * An {@link AsyncFitnessOp} that evaluates {@code fitnessOp} on
+     * {@code executor}. The fitness op must be thread safe if the executor
+     * uses more than one thread.
+     *
+     * @param fitnessOp the fitness op to run asynchronously
+     * @param executor the executor on which to evaluate fitness
+     * @return the asynchronous fitness op
+     */
+    public static AsyncFitnessOp asyncFitness(final FitnessOp fitnessOp, final Executor executor) {
+        return new AsyncFitnessOp() {
+            public CompletableFuture<Double> fitness(final Chromosome chromosome) {
+                return CompletableFuture.supplyAsync(new Supplier<Double>() {
+                    public Double get() {
+                        return fitnessOp.fitness(chromosome);
+                    }
+                }, executor);
             }
         };
     }
@@ -72,19 +70,26 @@ public class Ops {
     /**
      * A {@link MutationOp} that randomly changes zero or more genes in
      * a chromosome. The chance that a gene will be mutated is determined
-     * by the given probability.
+     * by the given probability. If no gene is mutated the chromosome is
+     * returned as is.
      *
      * @param probability the chance that a gene will be mutated
      * @return the mutation op
      */
-    public static MutationOp pointMutation(final double probability) {
+    public static MutationOp pointMutation(double probability) {
+        final double logNoMutation = logOneMinus(probability);
         return new MutationOp() {
-            public Chromosome mutate(Chromosome chromosome) {
+            public Chromosome mutate(Chromosome chromosome, Rng random) {
+                int length = chromosome.length();
+                long index = geometricSkip(logNoMutation, random);
+                if (index >= length) {
+                    return chromosome;
+                }
+
                 ChromosomeBuilder cb = new ChromosomeBuilder(chromosome);
-                for (int i = 0; i < chromosome.length(); ++i) {
-                    if (random.nextDouble() < probability) {
-                        cb.mutate(i);
-                    }
+                while (index < length) {
+                    cb.mutate((int)index);
+                    index += 1 + geometricSkip(logNoMutation, random);
                 }
                 return cb.toChromosome();
             }
@@ -93,28 +98,67 @@ public class Ops {
 
     /**
      * A {@link MutationOp} that randomly reverses the order of a range of genes in a
-     * chromosome.
+     * chromosome. If no range is reversed the chromosome is returned as is.
      *
      * @param probability the change that a range of genes will be reversed in
      *        a chromosome
      * @return the mutation op
      */
-    public static MutationOp inversion(final double probability) {
+    public static MutationOp inversion(double probability) {
+        final double logNoInversion = logOneMinus(probability);
         return new MutationOp() {
-            public Chromosome mutate(Chromosome chromosome) {
+            public Chromosome mutate(Chromosome chromosome, Rng random) {
+                int length = chromosome.length();
+                long index = geometricSkip(logNoInversion, random);
+                if (index >= length) {
+                    return chromosome;
+                }
+
                 ChromosomeBuilder cb = new ChromosomeBuilder(chromosome);
-                for (int i = 0; i < chromosome.length(); ++i) {
-                    if (random.nextDouble() < probability) {
-                        int toIndex = random.nextInt(chromosome.length() - i) + i + 1;
-                        cb.invert(i, toIndex);
-                        i = toIndex;
-                    }
+                while (index < length) {
+                    int fromIndex = (int)index;
+                    int toIndex = random.nextInt(length - fromIndex) + fromIndex + 1;
+                    cb.invert(fromIndex, toIndex);
+                    index = toIndex + 1 + geometricSkip(logNoInversion, random);
                 }
                 return cb.toChromosome();
             }
         };
     }
 
+    /**
+     * Returns {@code log(1 - probability)}, clamping the probability to the
+     * range [0, 1].
+     */
+    private static double logOneMinus(double probability) {
+        if (probability >= 1) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return Math.log1p(-Math.max(0, probability));
+    }
+
+    /**
+     * Returns the number of genes to skip before the next gene that is
+     * changed, when each gene is changed independently with probability
+     * {@code p}. The skip is drawn from a geometric distribution, so the cost
+     * of an op is proportional to the number of changes rather than to the
+     * length of the chromosome.
+     *
+     * @param logOneMinusP {@code log(1 - p)}
+     * @param random the source of randomness
+     * @return the number of genes to skip
+     */
+    private static long geometricSkip(double logOneMinusP, Rng random) {
+        if (logOneMinusP == Double.NEGATIVE_INFINITY) {
+            return 0;
+        }
+        if (logOneMinusP == 0) {
+            return Integer.MAX_VALUE;
+        }
+        // Genes are indexed by int, so there is no need to skip further
+        return Math.min(Integer.MAX_VALUE, (long)(Math.log(1 - random.nextDouble()) / logOneMinusP));
+    }
+
     /**
      * A {@link CrossoverOp} that causes chromosomes to crossover at a single
      * point. For example, the children below are created when chromosome 1
@@ -136,16 +180,16 @@ public class Ops {
      */
     public static CrossoverOp singlePointCrossover() {
         return new CrossoverOp() {
-            public Pair<Chromosome> crossover(Pair<Chromosome> pair) {
+            public Pair<Chromosome> crossover(Pair<Chromosome> pair, Rng random) {
                 assert pair.first().length() == pair.second().length();
                 int crossoverPoint = random.nextInt(pair.first().length() - 1) + 1;
 
-                ChromosomeBuilder first = new ChromosomeBuilder(pair.first());
-                ChromosomeBuilder second = new ChromosomeBuilder(pair.second());
+                int length = pair.first().length();
 
-                for (int i = crossoverPoint; i < first.length(); ++i) {
-                    swapGene(i, first, second);
-                }
+                ChromosomeBuilder first = new ChromosomeBuilder(pair.first())
+                        .copyRange(pair.second(), crossoverPoint, length);
+                ChromosomeBuilder second = new ChromosomeBuilder(pair.second())
+                        .copyRange(pair.first(), crossoverPoint, length);
                 return new Pair<Chromosome>(first.toChromosome(), second.toChromosome());
             }
         };
@@ -161,15 +205,16 @@ public class Ops {
      */
     public static CrossoverOp uniformCrossover() {
         return new CrossoverOp() {
-            public Pair<Chromosome> crossover(Pair<Chromosome> pair) {
+            public Pair<Chromosome> crossover(Pair<Chromosome> pair, Rng random) {
                 assert pair.first().length() == pair.second().length();
                 ChromosomeBuilder first = new ChromosomeBuilder(pair.first());
                 ChromosomeBuilder second = new ChromosomeBuilder(pair.second());
 
-                for (int i = 0; i < pair.first().length(); ++i) {
-                    if (random.nextBoolean()) {
-                        swapGene(i, first, second);
-                    }
+                // Each set bit in the random mask swaps the corresponding gene
+                for (int w = 0; w < first.wordCount(); ++w) {
+                    long swap = (first.getWord(w) ^ second.getWord(w)) & random.nextLong();
+                    first.xorWord(w, swap);
+                    second.xorWord(w, swap);
                 }
 
                 return new Pair<Chromosome>(first.toChromosome(), second.toChromosome());
@@ -179,24 +224,189 @@ public class Ops {
 
     /**
      * A {@link SelectionOp} that randomly selects a chromosome from a population,
-     * giving favor to those with better fitness.
+     * giving favor to those with better fitness. The chance that a chromosome
+     * is selected is proportional to its fitness. Negative fitness values are
+     * treated as 0.
+     * <p/>
+     * Preparing the op for a generation builds an alias table (Vose's alias
+     * method), and the prepared op selects each chromosome in constant time
+     * without allocating. If the candidates are a
+     * {@link CumulativeCandidateList} the candidate is found using its
+     * cumulative fitness instead. Otherwise an op that has not been prepared
+     * walks the whole wheel for each selection.
      *
      * @return the selection operation
      */
     public static SelectionOp rouletteWheelSelection() {
-        return new SelectionOp() {
-            public Chromosome select(List<Candidate> candidates, double fitnessSum) {
-                Candidate key = CandidateKey.createKey(random.nextDouble() * fitnessSum);
-                int index = Collections.binarySearch(candidates, key);
-
-                if (index < 0) {
-                    index =  -(index + 1);
-                    if (index == candidates.size()) {
-                        index--;
+        return new PreparedSelectionOp() {
+            public SelectionOp prepare(List<Candidate> candidates, double fitnessSum) {
+                if (candidates instanceof CumulativeCandidateList) {
+                    return this;
+                }
+                return new AliasTable(candidates);
+            }
+
+            public Chromosome select(List<Candidate> candidates, double fitnessSum, Rng random) {
+                if (candidates instanceof CumulativeCandidateList) {
+                    CumulativeCandidateList cumulative = (CumulativeCandidateList)candidates;
+                    return cumulative.get(cumulative.indexOfCumulativeFitness(random.nextDouble() * fitnessSum))
+                            .chromosome();
+                }
+                return chromosome(candidates, spin(candidates, random.nextDouble()));
+            }
+        };
+    }
+
+    /**
+     * Returns the index of the candidate a roulette wheel stops at, given a
+     * uniform random value from 0, inclusive, to 1, exclusive. Takes time
+     * linear in the number of candidates.
+     */
+    private static int spin(List<Candidate> candidates, double uniform) {
+        double sum = 0;
+        for (int i = 0; i < candidates.size(); ++i) {
+            sum += Math.max(0, fitness(candidates, i));
+        }
+        if (sum <= 0) {
+            return (int)(uniform * candidates.size());
+        }
+
+        double point = uniform * sum;
+        int last = 0;
+        for (int i = 0; i < candidates.size(); ++i) {
+            double fitness = Math.max(0, fitness(candidates, i));
+            if (fitness > 0) {
+                if (point < fitness) {
+                    return i;
+                }
+                point -= fitness;
+                last = i;
+            }
+        }
+        // Only reached through rounding error
+        return last;
+    }
+
+    /**
+     * An alias table for fitness proportionate selection, built with Vose's
+     * alias method. It selects from the candidates it was built for.
+     * Instances are immutable once built.
+     */
+    private static class AliasTable implements SelectionOp {
+        final double[] probability;
+        final int[] alias;
+
+        AliasTable(List<Candidate> candidates) {
+            int n = candidates.size();
+            this.probability = new double[n];
+            this.alias = new int[n];
+
+            double sum = 0;
+            for (int i = 0; i < n; ++i) {
+                sum += Math.max(0, fitness(candidates, i));
+            }
+
+            // Scale each fitness so that the average is 1, then pair each
+            // below-average entry with an above-average one.
+            int[] small = new int[n];
+            int[] large = new int[n];
+            int numSmall = 0;
+            int numLarge = 0;
+            for (int i = 0; i < n; ++i) {
+                probability[i] = sum > 0 ? Math.max(0, fitness(candidates, i)) * n / sum : 1;
+                if (probability[i] < 1) {
+                    small[numSmall++] = i;
+                } else {
+                    large[numLarge++] = i;
+                }
+            }
+
+            while (numSmall > 0 && numLarge > 0) {
+                int less = small[--numSmall];
+                int more = large[--numLarge];
+                alias[less] = more;
+                probability[more] += probability[less] - 1;
+                if (probability[more] < 1) {
+                    small[numSmall++] = more;
+                } else {
+                    large[numLarge++] = more;
+                }
+            }
+
+            // Anything left over is only off by rounding error
+            while (numLarge > 0) {
+                probability[large[--numLarge]] = 1;
+            }
+            while (numSmall > 0) {
+                probability[small[--numSmall]] = 1;
+            }
+        }
+
+        public Chromosome select(List<Candidate> candidates, double fitnessSum, Rng random) {
+            return chromosome(candidates, select(random.nextDouble()));
+        }
+
+        /**
+         * Returns the index of a candidate given a uniform random value from
+         * 0, inclusive, to 1, exclusive.
+         */
+        int select(double uniform) {
+            double scaled = uniform * probability.length;
+            int index = (int)scaled;
+            return scaled - index < probability[index] ? index : alias[index];
+        }
+    }
+
+    /**
+     * A {@link BatchSelectionOp} that uses stochastic universal sampling. Like
+     * {@link #rouletteWheelSelection()} the chance that a chromosome is
+     * selected is proportional to its fitness, but all parents are chosen
+     * with a single random number and one pass over the population: the
+     * "wheel" is spun once with {@code numToSelect} evenly spaced pointers.
+     * A chromosome is selected either the floor or the ceiling of its
+     * expected number of times. The selected chromosomes are returned in
+     * random order. Negative fitness values are treated as 0.
+     *
+     * @return the selection operation
+     */
+    public static BatchSelectionOp stochasticUniversalSampling() {
+        return new BatchSelectionOp() {
+            public Chromosome select(List<Candidate> candidates, double fitnessSum, Rng random) {
+                return selectAll(candidates, fitnessSum, 1, random).get(0);
+            }
+
+            public List<Chromosome> selectAll(List<Candidate> candidates, double fitnessSum, int numToSelect,
+                                             Rng random) {
+                double sum = 0;
+                for (int i = 0; i < candidates.size(); ++i) {
+                    sum += Math.max(0, fitness(candidates, i));
+                }
+
+                List<Chromosome> selected = new ArrayList<Chromosome>(numToSelect);
+                if (sum <= 0) {
+                    for (int i = 0; i < numToSelect; ++i) {
+                        selected.add(chromosome(candidates, random.nextInt(candidates.size())));
                     }
+                    return selected;
                 }
 
-                return candidates.get(index).chromosome();
+                double spacing = sum / numToSelect;
+                double pointer = random.nextDouble() * spacing;
+                double cumulative = 0;
+                int index = -1;
+                for (int i = 0; i < numToSelect; ++i, pointer += spacing) {
+                    while (cumulative <= pointer && index < candidates.size() - 1) {
+                        cumulative += Math.max(0, fitness(candidates, ++index));
+                    }
+                    selected.add(chromosome(candidates, index));
+                }
+
+                // Fisher-Yates shuffle so that parents are not paired in population order
+                for (int i = selected.size() - 1; i > 0; --i) {
+                    int j = random.nextInt(i + 1);
+                    selected.set(i, selected.set(j, selected.get(i)));
+                }
+                return selected;
             }
         };
     }
@@ -204,26 +414,116 @@ public class Ops {
     /**
      * A {@link SelectionOp} that randomly selects a subset of the population
      * and then chooses the most fit {@link Chromosome} from that subpopulation.
+     * <p/>
+     * The tournament is drawn as a set of distinct indices into the ordered
+     * candidate list using Floyd's sampling algorithm and the entrant with
+     * the greatest fitness wins. The candidates do not need to be in order.
+     * Each thread reuses its own scratch space, so selection does not
+     * allocate. The op only compares fitness values, so it is an
+     * {@link OrdinalSelectionOp}. If the candidates are a
+     * {@link BoundedCandidateList}, an unbounded entrant always beats a
+     * bounded one. If every entrant is bounded, only the one with the
+     * greatest bound is evaluated in full, and each of the others is
+     * evaluated against the fitness it has to beat, which can stop early.
+     * The winner is the same as if every entrant had been evaluated in full.
      *
      * @param tournamentSize the number of chromosomes to select for the tournament
      * @return the selection op
      */
     public static SelectionOp tournamentSelection(final int tournamentSize) {
-        return new SelectionOp() {
-            public Chromosome select(List<Candidate> candidates, double fitnessSum) {
-                List<Candidate> tournament = new ArrayList<Candidate>(tournamentSize);
-                while (tournament.size() < tournamentSize) {
-                    Candidate candidate = candidates.get(random.nextInt(candidates.size()));
-                    if (!tournament.contains(candidate)) {
-                        tournament.add(candidate);
+        return new OrdinalSelectionOp() {
+            private final ThreadLocal<int[]> scratch = new ThreadLocal<int[]>() {
+                @Override
+                protected int[] initialValue() {
+                    return new int[tournamentSize];
+                }
+            };
+
+            public Chromosome select(List<Candidate> candidates, double fitnessSum, Rng random) {
+                int size = candidates.size();
+                int numEntrants = Math.min(tournamentSize, size);
+                int[] entrants = scratch.get();
+
+                int winner = -1;
+                for (int i = size - numEntrants, count = 0; i < size; ++i, ++count) {
+                    int entrant = random.nextInt(i + 1);
+                    for (int j = 0; j < count; ++j) {
+                        if (entrants[j] == entrant) {
+                            entrant = i;
+                            break;
+                        }
+                    }
+                    entrants[count] = entrant;
+
+                    // Ties go to the later candidate, which is the fitter one
+                    // in an ordered list. Bounds are less than any exact
+                    // fitness, so a bounded winner means every entrant is
+                    // bounded.
+                    int compare = winner < 0
+                            ? 1
+                            : Double.compare(fitness(candidates, entrant), fitness(candidates, winner));
+                    if (compare > 0 || (compare == 0 && entrant > winner)) {
+                        winner = entrant;
                     }
                 }
 
-                return tournament.get(random.nextInt(tournamentSize)).chromosome();
+                if (candidates instanceof BoundedCandidateList
+                        && ((BoundedCandidateList)candidates).isBound(winner)) {
+                    winner = fittestBounded((BoundedCandidateList)candidates, entrants, numEntrants, winner);
+                }
+                return chromosome(candidates, winner);
             }
         };
     }
 
+    /**
+     * Returns the fitness of the candidate at {@code index}, without creating
+     * a {@link Candidate} if the list can avoid it.
+     */
+    private static double fitness(List<Candidate> candidates, int index) {
+        if (candidates instanceof IndexedCandidateList) {
+            return ((IndexedCandidateList)candidates).fitness(index);
+        }
+        return candidates.get(index).fitness();
+    }
+
+    /**
+     * Returns the fittest of the first {@code numEntrants} {@code entrants} by
+     * their exact fitness, where each entrant is bounded and {@code winner}
+     * has the greatest bound. Only {@code winner} is evaluated in full; each
+     * other entrant only needs to be evaluated against the fitness it has to
+     * beat, and ties go to the later candidate.
+     */
+    private static int fittestBounded(BoundedCandidateList candidates, int[] entrants, int numEntrants,
+            int winner) {
+        int first = winner;
+        double best = candidates.exactFitness(winner);
+        for (int i = 0; i < numEntrants; ++i) {
+            int entrant = entrants[i];
+            if (entrant == first) {
+                continue;
+            }
+            // Below the cutoff the result is a bound less than the best
+            double fitness = candidates.fitness(entrant, best);
+            if (fitness > best || (fitness == best && entrant > winner)) {
+                winner = entrant;
+                best = fitness;
+            }
+        }
+        return winner;
+    }
+
+    /**
+     * Returns the chromosome of the candidate at {@code index}, without
+     * creating a {@link Candidate} if the list can avoid it.
+     */
+    private static Chromosome chromosome(List<Candidate> candidates, int index) {
+        if (candidates instanceof IndexedCandidateList) {
+            return ((IndexedCandidateList)candidates).chromosome(index);
+        }
+        return candidates.get(index).chromosome();
+    }
+
     /**
      * A {@link TerminationOp} that terminates the engine when it has reached
      * the specified generation number.
@@ -238,11 +538,4 @@ public class Ops {
             }
         };
     }
-
-    private static void swapGene(int index, ChromosomeBuilder cb1, ChromosomeBuilder cb2) {
-        boolean val1 = cb1.get(index);
-        boolean val2 = cb2.get(index);
-        cb1.set(index, val2);
-        cb2.set(index, val1);
-    }
 }
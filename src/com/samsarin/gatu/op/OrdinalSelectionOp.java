@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.op;
+
+/**
+ * A {@link SelectionOp} whose choices depend only on how the fitness of its
+ * candidates compare, not on their magnitude. If the engine's fitness op is a
+ * {@link BoundedFitnessOp}, a candidate that falls short of the cutoff may
+ * have only an upper bound as its fitness, and the engine passes the op a
+ * {@link com.samsarin.gatu.primitive.BoundedCandidateList}. An ordinal op
+ * must then treat a bounded candidate as less fit than any unbounded one,
+ * and compare two bounded candidates by their exact fitness, which is only
+ * evaluated for the candidates the op asks about.
+ * {@link Ops#tournamentSelection(int)} is an ordinal op.
+ *
+ * @author chris@samsarin.com
+ */
+public interface OrdinalSelectionOp extends SelectionOp {
+}
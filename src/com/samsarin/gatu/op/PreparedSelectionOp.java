@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.op;
+
+import java.util.List;
+
+import com.samsarin.gatu.primitive.Candidate;
+
+/**
+ * A {@link SelectionOp} that does some work once per generation so that each
+ * selection from that generation is cheap. The engine calls
+ * {@link #prepare(List, double)} with the candidates of each new generation
+ * and selects from them with the op it returns.
+ * <p/>
+ * The work for a generation is kept by the returned op, not by this one, so
+ * a single instance can be shared between engines that run at the same
+ * time, such as the islands of an island engine.
+ *
+ * @author chris@samsarin.com
+ */
+public interface PreparedSelectionOp extends SelectionOp {
+
+    /**
+     * Returns an op that selects chromosomes from {@code candidates}. The
+     * returned op may only be given {@code candidates}, which must not change
+     * while it is in use.
+     *
+     * @param candidates an ordered list of candidates
+     * @param fitnessSum the sum of each candidate's fitness
+     * @return the op prepared for {@code candidates}
+     */
+    SelectionOp prepare(List<Candidate> candidates, double fitnessSum);
+}
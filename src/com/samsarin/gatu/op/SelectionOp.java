@@ -6,6 +6,7 @@ package com.samsarin.gatu.op;
 
 import com.samsarin.gatu.primitive.Candidate;
 import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.Rng;
 
 import java.util.List;
 
@@ -18,11 +19,14 @@ public interface SelectionOp {
 
     /**
      * Given an ordered list of candidates (from least to most fit) this method
-     * returns a single chromosome.
+     * returns a single chromosome. If the engine only partly orders its
+     * population, only the best candidates are in order unless this op is a
+     * {@link SortedSelectionOp}.
      *
      * @param candidates an ordered list candidates
      * @param fitnessSum the sum of each candidate's fitness
+     * @param random the source of randomness for this selection
      * @return the selected chromosome
      */
-    Chromosome select(List<Candidate> candidates, double fitnessSum);
+    Chromosome select(List<Candidate> candidates, double fitnessSum, Rng random);
 }
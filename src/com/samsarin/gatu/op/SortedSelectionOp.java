@@ -0,0 +1,17 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.op;
+
+/**
+ * A {@link SelectionOp} that depends on its candidates being ordered from
+ * least to most fit. Engines that only partly order their population (see
+ * {@link com.samsarin.gatu.engine.EngineBuilder#setPartialSort(boolean)})
+ * still sort the whole population for ops that implement this interface.
+ * None of the selection ops in {@link Ops} need an ordered population.
+ *
+ * @author chris@samsarin.com
+ */
+public interface SortedSelectionOp extends SelectionOp {
+}
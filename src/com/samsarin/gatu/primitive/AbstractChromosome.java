@@ -4,22 +4,77 @@
 
 package com.samsarin.gatu.primitive;
 
-import java.util.BitSet;
-
 /**
  * @author chris@samsarin.com
  */
 /* package private */ abstract class AbstractChromosome implements Chromosome {
-    
+
+    /**
+     * Returns the word at {@code wordIndex}. Genes past the end of the
+     * chromosome are always 0.
+     *
+     * @param wordIndex the index of the word, from 0 to {@link #wordCount()}
+     * @return the genes packed into the word
+     */
+    abstract long word(int wordIndex);
+
+    /**
+     * Returns the number of words used to store this chromosome's genes.
+     *
+     * @return the number of words
+     */
+    int wordCount() {
+        return Bits.wordCount(length());
+    }
+
+    /**
+     * Reads {@code numBits} genes (1 to 64) starting at {@code index}. The gene
+     * at {@code index} is returned in the lowest bit. No bounds checking is
+     * performed.
+     */
+    long bits(int index, int numBits) {
+        int wordIndex = index >>> 6;
+        int offset = index & (Bits.WORD_SIZE - 1);
+        long value = word(wordIndex) >>> offset;
+        if (offset + numBits > Bits.WORD_SIZE) {
+            value |= word(wordIndex + 1) << (Bits.WORD_SIZE - offset);
+        }
+        return value & Bits.lowMask(numBits);
+    }
+
     /**
-     * Returns the chromosome as a {@link BitSet}.
-     * @return the BitSet view of this chromosome
+     * Returns {@code true} if builders created from this chromosome record a
+     * {@link Derivation} for the chromosomes they build.
+     *
+     * @see Chromosomes#trackDerivations(Chromosome)
      */
-    abstract BitSet bitSetValue();
+    boolean tracksDerivations() {
+        return false;
+    }
 
     public boolean get(int index) {
         checkBounds(index);
-        return bitSetValue().get(index);
+        return (word(index >>> 6) & (1L << index)) != 0;
+    }
+
+    /**
+     * Computes the fingerprint from the chromosome's words. Subclasses that are
+     * immutable should cache the result.
+     */
+    public long fingerprint() {
+        return computeFingerprint();
+    }
+
+    /**
+     * Mixes each word into a 64-bit hash. The result is never 0, so 0 can be
+     * used to mark a fingerprint that has not been computed yet.
+     */
+    final long computeFingerprint() {
+        long hash = Bits.startFingerprint(length());
+        for (int i = 0; i < wordCount(); ++i) {
+            hash = Bits.mixFingerprint(hash, word(i));
+        }
+        return Bits.finishFingerprint(hash);
     }
     
     @Override
@@ -27,12 +82,27 @@ import java.util.BitSet;
         if (obj == this) return true;
         
         if (!(obj instanceof AbstractChromosome)) return false;
-        return bitSetValue().equals(((AbstractChromosome)obj).bitSetValue());
+        AbstractChromosome other = (AbstractChromosome)obj;
+        if (length() != other.length()) return false;
+        if (fingerprint() != other.fingerprint()) return false;
+        return equalWords(other);
+    }
+
+    /**
+     * Returns {@code true} if this chromosome and {@code other}, which has the
+     * same length, have the same words.
+     */
+    boolean equalWords(AbstractChromosome other) {
+        for (int i = 0; i < wordCount(); ++i) {
+            if (word(i) != other.word(i)) return false;
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
-        return bitSetValue().hashCode();
+        long fingerprint = fingerprint();
+        return (int)((fingerprint >>> 32) ^ fingerprint);
     }
     
     @Override
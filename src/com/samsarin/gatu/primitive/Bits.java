@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.primitive;
+
+/**
+ * Helper methods for working with genes packed into {@code long} words. Gene
+ * {@code i} is stored in word {@code i / 64} at bit {@code i % 64}, the same
+ * layout used by {@link java.util.BitSet}.
+ *
+ * @author chris@samsarin.com
+ */
+/* package private */ class Bits {
+    static final int WORD_SIZE = Long.SIZE;
+
+    private Bits() {}
+
+    /**
+     * Returns the number of words needed to store {@code length} genes.
+     */
+    static int wordCount(int length) {
+        return (length + WORD_SIZE - 1) >>> 6;
+    }
+
+    /**
+     * Returns a mask of the genes in use in the last word of a chromosome with
+     * {@code length} genes.
+     */
+    static long tailMask(int length) {
+        int used = length & (WORD_SIZE - 1);
+        return used == 0 ? -1L : (1L << used) - 1;
+    }
+
+    /**
+     * Starts the fingerprint of a chromosome with {@code length} genes. Each
+     * of its words is then mixed in with {@link #mixFingerprint(long, long)}
+     * and the result finished with {@link #finishFingerprint(long)}.
+     */
+    static long startFingerprint(int length) {
+        return length * 0x9E3779B97F4A7C15L;
+    }
+
+    static long mixFingerprint(long hash, long word) {
+        hash = (hash ^ word) * 0xBF58476D1CE4E5B9L;
+        return hash ^ (hash >>> 31);
+    }
+
+    /**
+     * Finishes a fingerprint. The result is never 0, so 0 can be used to mark
+     * a fingerprint that has not been computed yet.
+     */
+    static long finishFingerprint(long hash) {
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Returns a mask with the lowest {@code numBits} bits set.
+     */
+    static long lowMask(int numBits) {
+        return numBits == WORD_SIZE ? -1L : (1L << numBits) - 1;
+    }
+
+    /**
+     * Reads {@code numBits} genes (1 to 64) starting at {@code index}. The gene
+     * at {@code index} is returned in the lowest bit. No bounds checking is
+     * performed.
+     */
+    static long read(long[] words, int index, int numBits) {
+        int wordIndex = index >>> 6;
+        int offset = index & (WORD_SIZE - 1);
+        long value = words[wordIndex] >>> offset;
+        if (offset + numBits > WORD_SIZE) {
+            value |= words[wordIndex + 1] << (WORD_SIZE - offset);
+        }
+        return value & lowMask(numBits);
+    }
+
+    /**
+     * Writes the lowest {@code numBits} bits (1 to 64) of {@code value} to the
+     * genes starting at {@code index}. No bounds checking is performed.
+     */
+    static void write(long[] words, int index, int numBits, long value) {
+        int wordIndex = index >>> 6;
+        int offset = index & (WORD_SIZE - 1);
+        long mask = lowMask(numBits);
+        value &= mask;
+        words[wordIndex] = (words[wordIndex] & ~(mask << offset)) | (value << offset);
+        if (offset + numBits > WORD_SIZE) {
+            int written = WORD_SIZE - offset;
+            words[wordIndex + 1] = (words[wordIndex + 1] & ~(mask >>> written)) | (value >>> written);
+        }
+    }
+}
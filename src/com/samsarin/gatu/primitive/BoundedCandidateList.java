@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.primitive;
+
+/**
+ * An {@link IndexedCandidateList} in which the fitness of some candidates is
+ * only an upper bound, because their evaluation was cut short (see
+ * {@link com.samsarin.gatu.op.BoundedFitnessOp}). Every bound is less than
+ * the fitness of every candidate whose fitness is not a bound, so a bounded
+ * candidate is known to be less fit than any unbounded one. How two bounded
+ * candidates compare is only known once one is evaluated in full and the
+ * other is found to reach or fall short of its fitness.
+ * <p/>
+ * The list is ordered by {@link #fitness(int)}, so bounded candidates come
+ * first, ordered by their bounds. {@link #get(int)} returns each candidate
+ * with its exact fitness.
+ *
+ * @author chris@samsarin.com
+ */
+public interface BoundedCandidateList extends IndexedCandidateList {
+
+    /**
+     * Returns {@code true} if {@link #fitness(int)} is only an upper bound on
+     * the fitness of the candidate at {@code index}.
+     *
+     * @param index the index of the candidate
+     * @return {@code true} if the candidate's fitness is a bound
+     */
+    boolean isBound(int index);
+
+    /**
+     * Returns the exact fitness of the candidate at {@code index}. If its
+     * fitness is a bound the candidate is evaluated in full the first time
+     * this is called; later calls return the same value. This method is
+     * thread safe.
+     *
+     * @param index the index of the candidate
+     * @return the candidate's exact fitness
+     */
+    double exactFitness(int index);
+
+    /**
+     * Returns the exact fitness of the candidate at {@code index} if it is at
+     * least {@code cutoff}. Otherwise this method returns an upper bound
+     * less than {@code cutoff}. A bounded candidate whose bound is not
+     * already less than {@code cutoff} is evaluated again against it, which
+     * may stop early; the tighter bound or exact fitness is kept for later
+     * calls. This method is thread safe.
+     *
+     * @param index the index of the candidate
+     * @param cutoff the fitness below which only an upper bound is needed
+     * @return the candidate's fitness, or an upper bound less than
+     *         {@code cutoff}
+     */
+    double fitness(int index, double cutoff);
+}
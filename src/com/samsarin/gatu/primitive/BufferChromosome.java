@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.primitive;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A chromosome whose genes are read directly from a {@link ByteBuffer}, with
+ * its words stored as little-endian longs starting at a fixed offset. If the
+ * words in the buffer are changed, {@link #invalidate()} must be called
+ * before the chromosome is used again.
+ *
+ * @author chris@samsarin.com
+ */
+/* package private */ class BufferChromosome extends AbstractChromosome {
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+    private final boolean tracksDerivations;
+
+    /**
+     * The view of the same words that tracks derivations, which is this
+     * chromosome if it tracks derivations itself. It is created once, since
+     * the engine asks for it for every slot in every generation.
+     */
+    private final BufferChromosome tracking;
+
+    /**
+     * The cached fingerprint, or 0 if it has not been computed yet.
+     */
+    private volatile long fingerprint;
+
+    /**
+     * @param buffer the little-endian buffer holding the words; its position
+     *        and limit are not used, so it may be shared
+     * @param offset the index of the first byte of the first word
+     * @param length the number of genes
+     */
+    /* package private */ BufferChromosome(ByteBuffer buffer, int offset, int length) {
+        this(buffer, offset, length, false);
+    }
+
+    private BufferChromosome(ByteBuffer buffer, int offset, int length, boolean tracksDerivations) {
+        assert buffer.order() == ByteOrder.LITTLE_ENDIAN;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        this.tracksDerivations = tracksDerivations;
+        this.tracking = tracksDerivations ? this : new BufferChromosome(buffer, offset, length, true);
+    }
+
+    /**
+     * Returns the view of the same words whose builders record derivations.
+     * The view is only valid as long as this one is, and the same view is
+     * returned each time.
+     */
+    BufferChromosome trackingDerivations() {
+        return tracking;
+    }
+
+    @Override
+    boolean tracksDerivations() {
+        return tracksDerivations;
+    }
+
+    @Override
+    long word(int wordIndex) {
+        return buffer.getLong(offset + (wordIndex << 3));
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Forgets the cached fingerprint, and that of the tracking view, after
+     * the words in the buffer have changed.
+     */
+    void invalidate() {
+        fingerprint = 0;
+        tracking.fingerprint = 0;
+    }
+
+    @Override
+    public long fingerprint() {
+        long result = fingerprint;
+        if (result == 0) {
+            result = computeFingerprint();
+            fingerprint = result;
+        }
+        return result;
+    }
+}
@@ -31,4 +31,32 @@ public interface Chromosome {
      *         chromosome.
      */
     boolean get(int index);
+
+    /**
+     * Returns a 64-bit fingerprint of this chromosome's genes. Chromosomes
+     * with the same genes always have the same fingerprint, and chromosomes
+     * with different fingerprints never have the same genes.
+     * <p/>
+     * This default implementation reads every gene each time it is called.
+     * The chromosomes created by this library compute their fingerprint at
+     * most once, so for them it is a cheap way to compare or hash
+     * chromosomes.
+     *
+     * @return the fingerprint
+     */
+    default long fingerprint() {
+        int length = length();
+        long hash = Bits.startFingerprint(length);
+        for (int from = 0; from < length; from += Bits.WORD_SIZE) {
+            int to = Math.min(from + Bits.WORD_SIZE, length);
+            long word = 0;
+            for (int i = from; i < to; ++i) {
+                if (get(i)) {
+                    word |= 1L << i;
+                }
+            }
+            hash = Bits.mixFingerprint(hash, word);
+        }
+        return Bits.finishFingerprint(hash);
+    }
 }
@@ -4,13 +4,27 @@
 
 package com.samsarin.gatu.primitive;
 
-import java.util.BitSet;
-
 /**
  * A mutable representation of a {@link com.samsarin.gatu.primitive.Chromosome}.
  * This class can be used to make several successive changes to a chromosome
  * before generating an immutable copy.
  * <p/>
+ * Genes are packed 64 to a {@code long} word. In addition to the per-gene
+ * methods, the builder offers word-level methods ({@link #getWord(int)},
+ * {@link #setWord(int, long)}, {@link #xorWord(int, long)} and
+ * {@link #copyRange(Chromosome, int, int)}) that operate on up to 64 genes
+ * at a time. Gene {@code i} is stored in word {@code i / 64} at bit
+ * {@code i % 64}.
+ * <p/>
+ * A builder created from a chromosome that tracks derivations (see
+ * {@link Chromosomes#trackDerivations(Chromosome)}), or from a chromosome
+ * derived from one, records which words of genes it changes, and the
+ * chromosomes it builds carry a {@link Derivation} with the parent and the
+ * changed ranges. This lets an incremental fitness op re-evaluate only the
+ * genes that changed. Changes are recorded per word, and a word whose genes
+ * are overwritten with the same values is not recorded. Builders created
+ * from any other chromosome record nothing.
+ * <p/>
  * Methods that change the chromosome builder's state can be chained. For
  * example: {@code new ChromosomeBuilder(2).set(0, true).set(1, true)}.
  * <p/>
@@ -19,29 +33,85 @@ import java.util.BitSet;
  * @author chris@samsarin.com
  */
 public class ChromosomeBuilder {
-    private final BitSet bitSet;
+    private long[] words;
     private final int length;
 
+    /**
+     * {@code true} if {@link #words} is shared with a chromosome and must be
+     * copied before it is changed.
+     */
+    private boolean shared;
+
+    /**
+     * The chromosome this builder's genes were copied from, or {@code null}
+     * if it was created empty.
+     */
+    private Chromosome parent;
+
+    /**
+     * One bit per word, set if the word may differ from {@link #parent}.
+     * {@code null} if there is no parent.
+     */
+    private long[] changedWords;
+
+    /**
+     * {@code true} if {@link #changedWords} is shared with a derivation and
+     * must be copied before it is changed.
+     */
+    private boolean changedShared;
+
     /**
      * Constructs a new builder with {@code length} number of genes.
      *
      * @param length number of genes for the new chromosome
      */
     public ChromosomeBuilder(int length) {
-        this.bitSet = new BitSet();
+        this.words = new long[Bits.wordCount(length)];
         this.length = length;
     }
 
     /**
      * Creates a new builder from {@link com.samsarin.gatu.primitive.Chromosome}.
-     * Changes to the builder are not reflected in the chromosome.
+     * Changes to the builder are not reflected in the chromosome. If
+     * {@code chromosome} tracks derivations the chromosomes built are derived
+     * from it, and if it is itself derived they are derived from its
+     * parent.
      *
      * @param chromosome the chromosome to copy
      */
     public ChromosomeBuilder(Chromosome chromosome) {
-        AbstractChromosome coerced = (AbstractChromosome)chromosome;
-        this.bitSet = (BitSet)coerced.bitSetValue().clone();
         this.length = chromosome.length();
+        if (chromosome instanceof ChromosomeImpl) {
+            // Copied lazily on the first change
+            this.words = ((ChromosomeImpl)chromosome).words();
+            this.shared = true;
+        } else if (chromosome instanceof AbstractChromosome) {
+            AbstractChromosome coerced = (AbstractChromosome)chromosome;
+            this.words = new long[coerced.wordCount()];
+            for (int i = 0; i < words.length; ++i) {
+                words[i] = coerced.word(i);
+            }
+        } else {
+            this.words = new long[Bits.wordCount(length)];
+            for (int i = 0; i < length; ++i) {
+                if (chromosome.get(i)) {
+                    words[i >>> 6] |= 1L << i;
+                }
+            }
+        }
+
+        // A chromosome built from a derived chromosome is derived from the
+        // same parent
+        Derivation derivation = Chromosomes.derivation(chromosome);
+        if (derivation != null) {
+            this.parent = derivation.parent();
+            this.changedWords = derivation.changedWords();
+            this.changedShared = true;
+        } else if (chromosome instanceof AbstractChromosome
+                && ((AbstractChromosome)chromosome).tracksDerivations()) {
+            this.parent = chromosome;
+            this.changedWords = new long[Bits.wordCount(words.length)];
+        }
     }
 
    /**
@@ -54,7 +124,7 @@ public class ChromosomeBuilder {
      */
     public boolean get(int index) {
         checkBounds(index);
-        return bitSet.get(index);
+        return (words[index >>> 6] & (1L << index)) != 0;
     }
 
    /**
@@ -68,7 +138,11 @@ public class ChromosomeBuilder {
      */
     public ChromosomeBuilder set(int index, boolean value) {
         checkBounds(index);
-        bitSet.set(index, value);
+        if (get(index) != value) {
+            unshare();
+            words[index >>> 6] ^= 1L << index;
+            changed(index >>> 6);
+        }
         return this;
     }
 
@@ -84,16 +158,28 @@ public class ChromosomeBuilder {
      *         chromosome.
      */
     public ChromosomeBuilder invert(int fromIndex, int toIndex) {
-        toIndex--;
         checkBounds(fromIndex);
-        checkBounds(toIndex);
+        checkBounds(toIndex - 1);
+
+        int rangeLength = toIndex - fromIndex;
+        if (rangeLength < 2) {
+            return this;
+        }
+        unshare();
 
-        while(fromIndex < toIndex) {
-            boolean fromValue = bitSet.get(fromIndex);
-            boolean toValue = bitSet.get(toIndex);
-            bitSet.set(fromIndex++, toValue);
-            bitSet.set(toIndex--, fromValue);
+        // Chunk k of the reversed range is the mirror image of the chunk of
+        // the same size at the other end of the range.
+        long[] reversed = new long[Bits.wordCount(rangeLength)];
+        for (int k = 0, done = 0; done < rangeLength; ++k, done += Bits.WORD_SIZE) {
+            int numBits = Math.min(Bits.WORD_SIZE, rangeLength - done);
+            long value = Bits.read(words, toIndex - done - numBits, numBits);
+            reversed[k] = Long.reverse(value) >>> (Bits.WORD_SIZE - numBits);
+        }
+        for (int k = 0, done = 0; done < rangeLength; ++k, done += Bits.WORD_SIZE) {
+            int numBits = Math.min(Bits.WORD_SIZE, rangeLength - done);
+            Bits.write(words, fromIndex + done, numBits, reversed[k]);
         }
+        changed(fromIndex >>> 6, (toIndex - 1) >>> 6);
 
         return this;
     }
@@ -106,7 +192,115 @@ public class ChromosomeBuilder {
      */
     public ChromosomeBuilder mutate(int index) {
         checkBounds(index);
-        bitSet.flip(index);
+        unshare();
+        words[index >>> 6] ^= 1L << index;
+        changed(index >>> 6);
+        return this;
+    }
+
+    /**
+     * Returns the number of words used to store the genes in this builder.
+     *
+     * @return the number of words
+     */
+    public int wordCount() {
+        return words.length;
+    }
+
+    /**
+     * Returns the 64 genes packed in the word at {@code wordIndex}. Gene
+     * {@code wordIndex * 64 + i} is stored in bit {@code i}. Bits past the end
+     * of the chromosome are always 0.
+     *
+     * @param wordIndex the word to retrieve
+     * @return the packed genes
+     * @throws IndexOutOfBoundsException if the word is not included in this
+     *         chromosome.
+     */
+    public long getWord(int wordIndex) {
+        checkWordBounds(wordIndex);
+        return words[wordIndex];
+    }
+
+    /**
+     * Sets the 64 genes packed in the word at {@code wordIndex}. Bits past the
+     * end of the chromosome are ignored.
+     *
+     * @param wordIndex the word to set
+     * @param value the packed genes
+     * @return the chromosome builder
+     * @throws IndexOutOfBoundsException if the word is not included in this
+     *         chromosome.
+     */
+    public ChromosomeBuilder setWord(int wordIndex, long value) {
+        checkWordBounds(wordIndex);
+        value &= wordMask(wordIndex);
+        if (words[wordIndex] != value) {
+            unshare();
+            words[wordIndex] = value;
+            changed(wordIndex);
+        }
+        return this;
+    }
+
+    /**
+     * Flips each gene in the word at {@code wordIndex} for which the
+     * corresponding bit in {@code mask} is set. Bits past the end of the
+     * chromosome are ignored.
+     *
+     * @param wordIndex the word to change
+     * @param mask the genes to flip
+     * @return the chromosome builder
+     * @throws IndexOutOfBoundsException if the word is not included in this
+     *         chromosome.
+     */
+    public ChromosomeBuilder xorWord(int wordIndex, long mask) {
+        checkWordBounds(wordIndex);
+        mask &= wordMask(wordIndex);
+        if (mask != 0) {
+            unshare();
+            words[wordIndex] ^= mask;
+            changed(wordIndex);
+        }
+        return this;
+    }
+
+    /**
+     * Copies the genes between {@code fromIndex}, inclusive, and
+     * {@code toIndex}, exclusive, from {@code source} into the same positions
+     * in this builder.
+     *
+     * @param source the chromosome to copy genes from
+     * @param fromIndex the index (inclusive) at which to start copying
+     * @param toIndex the index (exclusive) at which to stop copying
+     * @return the chromosome builder
+     * @throws IndexOutOfBoundsException if the range is not included in both
+     *         this builder and {@code source}.
+     */
+    public ChromosomeBuilder copyRange(Chromosome source, int fromIndex, int toIndex) {
+        if (fromIndex < 0 || fromIndex > toIndex || toIndex > length || toIndex > source.length()) {
+            throw new IndexOutOfBoundsException("Range out of bounds. Expected 0 <= fromIndex <= toIndex <= "
+                    + Math.min(length, source.length()) + ". Actual: " + fromIndex + ", " + toIndex);
+        }
+        if (fromIndex == toIndex) {
+            return this;
+        }
+        if (source instanceof AbstractChromosome) {
+            AbstractChromosome coerced = (AbstractChromosome)source;
+            for (int i = fromIndex; i < toIndex; i += Bits.WORD_SIZE) {
+                int numBits = Math.min(Bits.WORD_SIZE, toIndex - i);
+                long value = coerced.bits(i, numBits);
+                if (Bits.read(words, i, numBits) != value) {
+                    unshare();
+                    Bits.write(words, i, numBits, value);
+                    changed(i >>> 6, (i + numBits - 1) >>> 6);
+                }
+            }
+        } else {
+            for (int i = fromIndex; i < toIndex; ++i) {
+                set(i, source.get(i));
+            }
+        }
         return this;
     }
 
@@ -127,7 +321,47 @@ public class ChromosomeBuilder {
      * @return the chromosome
      */
     public Chromosome toChromosome() {
-        return new ChromosomeImpl(length, (BitSet)bitSet.clone());
+        // The words are shared until the next change to this builder
+        shared = true;
+        if (parent == null) {
+            return new ChromosomeImpl(length, words);
+        }
+        changedShared = true;
+        return new ChromosomeImpl(length, words, new Derivation(parent, changedWords));
+    }
+
+    private void unshare() {
+        if (shared) {
+            words = words.clone();
+            shared = false;
+        }
+    }
+
+    /**
+     * Records that the word at {@code wordIndex} may differ from the parent.
+     */
+    private void changed(int wordIndex) {
+        if (changedWords != null && (changedWords[wordIndex >>> 6] & (1L << wordIndex)) == 0) {
+            if (changedShared) {
+                changedWords = changedWords.clone();
+                changedShared = false;
+            }
+            changedWords[wordIndex >>> 6] |= 1L << wordIndex;
+        }
+    }
+
+    /**
+     * Records that the words from {@code fromWord} to {@code toWord}, both
+     * inclusive, may differ from the parent.
+     */
+    private void changed(int fromWord, int toWord) {
+        for (int w = fromWord; w <= toWord; ++w) {
+            changed(w);
+        }
+    }
+
+    private long wordMask(int wordIndex) {
+        return wordIndex == words.length - 1 ? Bits.tailMask(length) : -1L;
     }
 
     private void checkBounds(int index) {
@@ -136,4 +370,11 @@ public class ChromosomeBuilder {
                     + length() + ". Actual: " + index);
         }
     }
+
+    private void checkWordBounds(int wordIndex) {
+        if (wordIndex < 0 || wordIndex >= words.length) {
+            throw new IndexOutOfBoundsException("Word index out of bounds. Expected 0 <= wordIndex < "
+                    + words.length + ". Actual: " + wordIndex);
+        }
+    }
 }
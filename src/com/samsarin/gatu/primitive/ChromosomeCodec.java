@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.primitive;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes chromosomes in a compact binary format. A chromosome is
+ * written as its length in genes, as an {@code int}, followed by its genes
+ * packed into little-endian {@code long} words. Gene {@code i} is bit
+ * {@code i % 64} of word {@code i / 64}.
+ * <p/>
+ * A population is written as a header followed by each chromosome:
+ * <pre>
+ * int    magic number
+ * int    format version
+ * int    flags (1 if a checksum follows the chromosomes)
+ * int    number of chromosomes
+ *
+ * int    chromosome length  (repeated for each chromosome)
+ * long[] chromosome words
+ *
+ * long   CRC-32 of the chromosomes (optional)
+ * </pre>
+ * All values are little-endian. A population file can be memory-mapped with
+ * {@link #mapPopulation(File)}, in which case its chromosomes read their
+ * genes straight from the mapped file without being copied.
+ *
+ * @author chris@samsarin.com
+ */
+public class ChromosomeCodec {
+    private static final int MAGIC = 0x43505447; // "GTPC" when little-endian
+    private static final int VERSION = 1;
+    private static final int FLAG_CHECKSUM = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4;
+    private static final int CHECKSUM_SIZE = 8;
+
+    private ChromosomeCodec() {}
+
+    /**
+     * Returns the number of bytes used to encode {@code chromosome}.
+     *
+     * @param chromosome the chromosome to encode
+     * @return the encoded size in bytes
+     */
+    public static int encodedSize(Chromosome chromosome) {
+        return 4 + 8 * Bits.wordCount(chromosome.length());
+    }
+
+    /**
+     * Writes {@code chromosome} at the buffer's current position and advances
+     * the position past it.
+     *
+     * @param chromosome the chromosome to write
+     * @param buffer the buffer to write to
+     * @throws java.nio.BufferOverflowException if there is not enough room
+     *         left in the buffer
+     */
+    public static void write(Chromosome chromosome, ByteBuffer buffer) {
+        AbstractChromosome packed = packed(chromosome);
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            buffer.putInt(packed.length());
+            for (int i = 0; i < packed.wordCount(); ++i) {
+                buffer.putLong(packed.word(i));
+            }
+        } finally {
+            buffer.order(order);
+        }
+    }
+
+    /**
+     * Reads a chromosome from the buffer's current position and advances the
+     * position past it. The genes are copied, so the buffer may be reused
+     * afterwards.
+     *
+     * @param buffer the buffer to read from
+     * @return the chromosome
+     * @throws IllegalArgumentException if the buffer does not hold a valid
+     *         chromosome
+     * @throws BufferUnderflowException if the chromosome is truncated
+     */
+    public static Chromosome read(ByteBuffer buffer) {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            int length = buffer.getInt();
+            checkLength(length, buffer.remaining());
+            long[] words = new long[Bits.wordCount(length)];
+            for (int i = 0; i < words.length; ++i) {
+                words[i] = buffer.getLong();
+            }
+            checkTail(length, words.length > 0 ? words[words.length - 1] : 0);
+            return new ChromosomeImpl(length, words);
+        } finally {
+            buffer.order(order);
+        }
+    }
+
+    /**
+     * Returns the number of bytes used to encode {@code population}.
+     *
+     * @param population the chromosomes to encode
+     * @param checksum whether a checksum is included
+     * @return the encoded size in bytes
+     */
+    public static long encodedSize(List<Chromosome> population, boolean checksum) {
+        long size = HEADER_SIZE + (checksum ? CHECKSUM_SIZE : 0);
+        for (Chromosome chromosome : population) {
+            size += encodedSize(chromosome);
+        }
+        return size;
+    }
+
+    /**
+     * Writes {@code population} at the buffer's current position and advances
+     * the position past it.
+     *
+     * @param population the chromosomes to write
+     * @param buffer the buffer to write to
+     * @param checksum whether to follow the chromosomes with a checksum
+     * @throws java.nio.BufferOverflowException if there is not enough room
+     *         left in the buffer
+     */
+    public static void writePopulation(List<Chromosome> population, ByteBuffer buffer, boolean checksum) {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            buffer.putInt(MAGIC)
+                  .putInt(VERSION)
+                  .putInt(checksum ? FLAG_CHECKSUM : 0)
+                  .putInt(population.size());
+            int start = buffer.position();
+            for (Chromosome chromosome : population) {
+                write(chromosome, buffer);
+            }
+            if (checksum) {
+                buffer.putLong(checksum(buffer, start, buffer.position()));
+            }
+        } finally {
+            buffer.order(order);
+        }
+    }
+
+    /**
+     * Reads a population from the buffer's current position and advances the
+     * position past it. The genes are copied, so the buffer may be reused
+     * afterwards.
+     *
+     * @param buffer the buffer to read from
+     * @return the chromosomes, in the order they were written
+     * @throws IllegalArgumentException if the buffer does not hold a valid
+     *         population or its checksum does not match
+     * @throws BufferUnderflowException if the population is truncated
+     */
+    public static List<Chromosome> readPopulation(ByteBuffer buffer) {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            boolean checksum = (readHeader(buffer) & FLAG_CHECKSUM) != 0;
+            int count = readCount(buffer);
+            int start = buffer.position();
+            List<Chromosome> population = new ArrayList<Chromosome>(count);
+            for (int i = 0; i < count; ++i) {
+                population.add(read(buffer));
+            }
+            if (checksum) {
+                verifyChecksum(buffer, start);
+            }
+            return population;
+        } finally {
+            buffer.order(order);
+        }
+    }
+
+    /**
+     * Writes {@code population} to {@code file}, replacing its contents.
+     *
+     * @param population the chromosomes to write
+     * @param file the file to write to
+     * @param checksum whether to follow the chromosomes with a checksum
+     * @throws IOException if the file could not be written
+     */
+    public static void writePopulation(List<Chromosome> population, File file, boolean checksum)
+            throws IOException {
+        long size = encodedSize(population, checksum);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Population is too large to encode: " + size + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int)size);
+        writePopulation(population, buffer, checksum);
+        buffer.flip();
+
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads a population from {@code file} into memory.
+     *
+     * @param file the file to read
+     * @return the chromosomes, in the order they were written
+     * @throws IOException if the file could not be read or is not a valid
+     *         population file
+     */
+    public static List<Chromosome> readPopulation(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(checkedSize(channel, file));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Unexpected end of population file: " + file);
+                }
+            }
+            buffer.flip();
+            return readPopulation(buffer);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid population file: " + file, e);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated population file: " + file, e);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Memory-maps a population file. The returned chromosomes read their
+     * genes directly from the mapped file, so no genes are copied until a
+     * chromosome is changed with a {@link ChromosomeBuilder}. The file must
+     * not be changed while the chromosomes are in use. If the file has a
+     * checksum it is verified before this method returns.
+     *
+     * @param file the file to map
+     * @return an unmodifiable list of the chromosomes, in the order they were
+     *         written
+     * @throws IOException if the file could not be mapped or is not a valid
+     *         population file
+     */
+    public static List<Chromosome> mapPopulation(File file) throws IOException {
+        ByteBuffer buffer;
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, checkedSize(channel, file));
+        } finally {
+            // The mapping remains valid after the channel is closed
+            channel.close();
+        }
+
+        try {
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            boolean checksum = (readHeader(buffer) & FLAG_CHECKSUM) != 0;
+            int count = readCount(buffer);
+            int start = buffer.position();
+            Chromosome[] population = new Chromosome[count];
+            for (int i = 0; i < count; ++i) {
+                int length = buffer.getInt();
+                checkLength(length, buffer.remaining());
+                int wordCount = Bits.wordCount(length);
+                int offset = buffer.position();
+                checkTail(length, wordCount > 0 ? buffer.getLong(offset + 8 * (wordCount - 1)) : 0);
+                population[i] = new BufferChromosome(buffer, offset, length);
+                buffer.position(offset + 8 * wordCount);
+            }
+            if (checksum) {
+                verifyChecksum(buffer, start);
+            }
+            return Collections.unmodifiableList(Arrays.asList(population));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid population file: " + file, e);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated population file: " + file, e);
+        }
+    }
+
+    /**
+     * Returns {@code chromosome} as an {@link AbstractChromosome}, so that its
+     * words can be read directly.
+     */
+    private static AbstractChromosome packed(Chromosome chromosome) {
+        if (chromosome instanceof AbstractChromosome) {
+            return (AbstractChromosome)chromosome;
+        }
+        return (AbstractChromosome)new ChromosomeBuilder(chromosome).toChromosome();
+    }
+
+    /**
+     * Reads and checks the magic number and version, and returns the flags.
+     */
+    private static int readHeader(ByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a chromosome population");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported population version: " + version);
+        }
+        return buffer.getInt();
+    }
+
+    private static int readCount(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        if (count < 0) {
+            throw new IllegalArgumentException("Invalid population size: " + count);
+        }
+        return count;
+    }
+
+    private static void checkLength(int length, int remaining) {
+        if (length < 0 || 8L * Bits.wordCount(length) > remaining) {
+            throw new IllegalArgumentException("Invalid chromosome length: " + length);
+        }
+    }
+
+    /**
+     * Checks that the genes past the end of a chromosome in its last word are
+     * all 0.
+     */
+    private static void checkTail(int length, long lastWord) {
+        if ((lastWord & ~Bits.tailMask(length)) != 0) {
+            throw new IllegalArgumentException("Genes set past the end of a chromosome of length " + length);
+        }
+    }
+
+    private static void verifyChecksum(ByteBuffer buffer, int start) {
+        long expected = checksum(buffer, start, buffer.position());
+        if (buffer.getLong() != expected) {
+            throw new IllegalArgumentException("Population checksum does not match");
+        }
+    }
+
+    /**
+     * Returns the CRC-32 of the bytes from {@code start} to {@code end},
+     * without changing the buffer's position.
+     */
+    private static long checksum(ByteBuffer buffer, int start, int end) {
+        ByteBuffer range = buffer.duplicate();
+        range.limit(end).position(start);
+        CRC32 crc = new CRC32();
+        crc.update(range);
+        return crc.getValue();
+    }
+
+    private static int checkedSize(FileChannel channel, File file) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Population file is too large: " + file);
+        }
+        return (int)size;
+    }
+}
@@ -4,27 +4,101 @@
 
 package com.samsarin.gatu.primitive;
 
-import java.util.BitSet;
+import java.util.Arrays;
 
 /**
+ * A chromosome with its genes packed into a {@code long[]}. The array must
+ * not be changed once it has been given to a ChromosomeImpl.
  *
  * @author chris@samsarin.com
  */
 /* package private */ class ChromosomeImpl extends AbstractChromosome {
-    private final BitSet genes;
+    private final long[] words;
     private final int length;
+
+    /**
+     * How this chromosome was built from a parent, or {@code null} if it was
+     * not.
+     */
+    private final Derivation derivation;
+
+    /**
+     * {@code true} if builders created from this chromosome record
+     * derivations.
+     */
+    private final boolean tracksDerivations;
+
+    /**
+     * The cached fingerprint, or 0 if it has not been computed yet.
+     */
+    private volatile long fingerprint;
     
-    /* package private */ ChromosomeImpl(int length, BitSet genes) {
+    /* package private */ ChromosomeImpl(int length, long[] words) {
+        this(length, words, null);
+    }
+
+    /* package private */ ChromosomeImpl(int length, long[] words, Derivation derivation) {
+        this(length, words, derivation, false);
+    }
+
+    /* package private */ ChromosomeImpl(int length, long[] words, Derivation derivation,
+            boolean tracksDerivations) {
+        assert words.length == Bits.wordCount(length);
         this.length = length;
-        this.genes = genes;
+        this.words = words;
+        this.derivation = derivation;
+        this.tracksDerivations = tracksDerivations;
+    }
+
+    @Override
+    long word(int wordIndex) {
+        return words[wordIndex];
     }
 
     @Override
-    BitSet bitSetValue() {
-        return genes;
+    long bits(int index, int numBits) {
+        return Bits.read(words, index, numBits);
+    }
+
+    /**
+     * Returns the backing words of this chromosome. The returned array must
+     * not be modified.
+     */
+    long[] words() {
+        return words;
+    }
+
+    /**
+     * Returns how this chromosome was built from a parent, or {@code null}.
+     */
+    Derivation derivation() {
+        return derivation;
+    }
+
+    @Override
+    boolean tracksDerivations() {
+        return tracksDerivations;
     }
 
     public int length() {
         return length;
     }
+
+    @Override
+    public long fingerprint() {
+        long result = fingerprint;
+        if (result == 0) {
+            result = computeFingerprint();
+            fingerprint = result;
+        }
+        return result;
+    }
+
+    @Override
+    boolean equalWords(AbstractChromosome other) {
+        if (other instanceof ChromosomeImpl) {
+            return Arrays.equals(words, ((ChromosomeImpl)other).words);
+        }
+        return super.equalWords(other);
+    }
 }
@@ -12,10 +12,17 @@ package com.samsarin.gatu.primitive;
  */
 public class ChromosomeReader {
     private final Chromosome _chromosome;
+    
+    /**
+     * The chromosome as an AbstractChromosome, or {@code null} if its words
+     * cannot be read directly.
+     */
+    private final AbstractChromosome _packed;
     private int _index;
     
     public ChromosomeReader(Chromosome chromosome) {
         _chromosome = chromosome;
+        _packed = chromosome instanceof AbstractChromosome ? (AbstractChromosome)chromosome : null;
     }
     
     /**
@@ -125,6 +132,14 @@ public class ChromosomeReader {
      
         assertAvailable(numBits);
         
+        if (_packed != null && numBits > 0) {
+            // The first gene read is the most significant bit of the value,
+            // but it is the lowest bit of the packed word.
+            long value = Long.reverse(_packed.bits(_index, numBits)) >>> (Long.SIZE - numBits);
+            _index += numBits;
+            return value;
+        }
+        
         int lastIndex = _index + numBits;
         long value = 0;
         for (; _index < lastIndex; ++_index) {
@@ -4,17 +4,12 @@
 
 package com.samsarin.gatu.primitive;
 
-import java.util.BitSet;
-import java.util.Random;
-
 /**
  * Helper methods for creating or working with {@link Chromosome}s.
  *
  * @author chris@samsarin.com
  */
 public class Chromosomes {
-    private static final Random random = new Random();
-
     private Chromosomes() {}
 
     /**
@@ -24,11 +19,103 @@ public class Chromosomes {
      * @return the chromosome
      */
     public static Chromosome random(int length) {
-        BitSet genes = new BitSet();
-        for (int i = 0; i < length; ++i) {
-            genes.set(i, random.nextBoolean());
+        return random(length, Rng.fromEntropy());
+    }
+
+    /**
+     * Creates a chromosome of the given length with a set of genes drawn from
+     * {@code random}. The same generator state always produces the same
+     * chromosome.
+     *
+     * @param length the number of genes in the chromosome
+     * @param random the source of randomness
+     * @return the chromosome
+     */
+    public static Chromosome random(int length, Rng random) {
+        long[] words = new long[Bits.wordCount(length)];
+        for (int i = 0; i < words.length; ++i) {
+            words[i] = random.nextLong();
+        }
+        if (words.length > 0) {
+            words[words.length - 1] &= Bits.tailMask(length);
+        }
+        return new ChromosomeImpl(length, words);
+    }
+
+    /**
+     * Returns a chromosome with the same genes as {@code chromosome} that does
+     * not depend on any shared storage, such as a {@link PopulationStore}, or
+     * on the chromosome it was derived from. A chromosome that is already
+     * independent is returned as is. Use this to keep a chromosome whose
+     * storage may be reused, or to let its parent be collected.
+     *
+     * @param chromosome the chromosome to detach
+     * @return an independent chromosome with the same genes
+     */
+    public static Chromosome detach(Chromosome chromosome) {
+        if (chromosome instanceof ChromosomeImpl) {
+            ChromosomeImpl impl = (ChromosomeImpl)chromosome;
+            if (impl.derivation() == null) {
+                return chromosome;
+            }
+            // The words are immutable, so they can be shared
+            return new ChromosomeImpl(impl.length(), impl.words());
+        }
+        if (chromosome instanceof AbstractChromosome) {
+            AbstractChromosome coerced = (AbstractChromosome)chromosome;
+            long[] words = new long[coerced.wordCount()];
+            for (int i = 0; i < words.length; ++i) {
+                words[i] = coerced.word(i);
+            }
+            return new ChromosomeImpl(coerced.length(), words);
+        }
+        return new ChromosomeBuilder(chromosome.length()).copyRange(chromosome, 0, chromosome.length())
+                .toChromosome();
+    }
+
+    /**
+     * Returns a chromosome with the same genes as {@code chromosome} from
+     * which {@link ChromosomeBuilder}s record a {@link Derivation}. Other
+     * chromosomes do not, so building offspring costs nothing extra unless
+     * derivations are needed. The returned chromosome has no derivation of
+     * its own. Its genes are shared with {@code chromosome} where they can
+     * be, so it is only valid for as long as {@code chromosome} is.
+     * <p/>
+     * The generational engine tracks the derivations of its population when
+     * its fitness op is an {@link com.samsarin.gatu.op.IncrementalFitnessOp}.
+     *
+     * @param chromosome the chromosome to track
+     * @return a chromosome with the same genes that tracks derivations
+     */
+    public static Chromosome trackDerivations(Chromosome chromosome) {
+        if (chromosome instanceof ChromosomeImpl) {
+            ChromosomeImpl impl = (ChromosomeImpl)chromosome;
+            if (impl.tracksDerivations()) {
+                return chromosome;
+            }
+            return new ChromosomeImpl(impl.length(), impl.words(), null, true);
+        }
+        if (chromosome instanceof BufferChromosome) {
+            return ((BufferChromosome)chromosome).trackingDerivations();
+        }
+        return trackDerivations(detach(chromosome));
+    }
+
+    /**
+     * Returns how {@code chromosome} was built from a parent chromosome, or
+     * {@code null} if it was not built by a {@link ChromosomeBuilder} created
+     * from a chromosome that tracks derivations (see
+     * {@link #trackDerivations(Chromosome)}) or from one of its
+     * descendants.
+     *
+     * @param chromosome the chromosome
+     * @return the derivation, or {@code null}
+     */
+    public static Derivation derivation(Chromosome chromosome) {
+        if (chromosome instanceof ChromosomeImpl) {
+            return ((ChromosomeImpl)chromosome).derivation();
         }
-        return new ChromosomeImpl(length, genes);
+        return null;
     }
 
     /**
@@ -38,7 +125,6 @@ public class Chromosomes {
      * @return the chromsome
      */
     public static Chromosome empty(int length) {
-        BitSet genes = new BitSet(length);
-        return new ChromosomeImpl(length, genes);
+        return new ChromosomeImpl(length, new long[Bits.wordCount(length)]);
     }
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.primitive;
+
+import java.util.List;
+
+/**
+ * An ordered list of candidates (from least to most fit) that keeps track of
+ * the cumulative fitness of its candidates. This allows fitness proportionate
+ * selection without summing the fitness of the whole population.
+ *
+ * @author chris@samsarin.com
+ */
+public interface CumulativeCandidateList extends List<Candidate> {
+
+    /**
+     * Returns the index of the candidate whose cumulative fitness range
+     * contains {@code cumulativeFitness}. Candidate {@code i} covers the range
+     * from the sum of the fitness of candidates {@code 0} to {@code i - 1},
+     * inclusive, to that sum plus its own fitness, exclusive.
+     *
+     * @param cumulativeFitness a value from 0, inclusive, to
+     *        {@link #fitnessSum()}, exclusive
+     * @return the index of the candidate
+     */
+    int indexOfCumulativeFitness(double cumulativeFitness);
+
+    /**
+     * Returns the sum of each candidate's fitness.
+     *
+     * @return the sum of each candidate's fitness
+     */
+    double fitnessSum();
+}
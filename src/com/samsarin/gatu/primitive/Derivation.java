@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.primitive;
+
+/**
+ * Records how a chromosome was built from a parent: the parent and the
+ * ranges of genes that may differ from it. Every chromosome built by a
+ * {@link ChromosomeBuilder} that was created from a chromosome that tracks
+ * derivations (see {@link Chromosomes#trackDerivations(Chromosome)}) has a
+ * derivation, which can be read with {@link Chromosomes#derivation(Chromosome)}.
+ * <p/>
+ * A chromosome built from a chromosome that itself has a derivation is
+ * derived from the same parent, with the changes of both combined. The
+ * parent therefore never has a derivation of its own, however many builders
+ * a chromosome passes through, and the changes always describe the
+ * difference from that parent.
+ *
+ * @author chris@samsarin.com
+ */
+public final class Derivation {
+    private final Chromosome parent;
+    private final long[] changedWords;
+
+    /**
+     * @param parent the chromosome the genes were copied from
+     * @param changedWords one bit per word of genes, set if the word may have
+     *        changed; the array is not copied
+     */
+    /* package private */ Derivation(Chromosome parent, long[] changedWords) {
+        assert Chromosomes.derivation(parent) == null;
+        this.parent = parent;
+        this.changedWords = changedWords;
+    }
+
+    /**
+     * Returns the chromosome that the derived chromosome was built from.
+     *
+     * @return the parent chromosome
+     */
+    public Chromosome parent() {
+        return parent;
+    }
+
+    /**
+     * Returns the ranges of genes that may differ from the parent. Genes
+     * outside these ranges are the same as in the parent.
+     *
+     * @return the changed ranges
+     */
+    public GeneRanges changes() {
+        return new GeneRanges(changedWords, parent.length());
+    }
+
+    /**
+     * Returns the bit per word of genes that is set if the word may have
+     * changed. The returned array must not be modified.
+     */
+    long[] changedWords() {
+        return changedWords;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.primitive;
+
+import java.util.Arrays;
+
+/**
+ * An ordered set of disjoint ranges of genes, each from {@link #from(int)},
+ * inclusive, to {@link #to(int)}, exclusive. Ranges are sorted by their first
+ * gene and adjacent ranges are merged.
+ * <p/>
+ * The changes recorded by a {@link ChromosomeBuilder} are tracked per word of
+ * 64 genes, so a range may include genes at either end that did not actually
+ * change. Instances are immutable.
+ *
+ * @author chris@samsarin.com
+ */
+public final class GeneRanges {
+    /**
+     * The bounds of each range: range {@code i} is from {@code bounds[2 * i]}
+     * to {@code bounds[2 * i + 1]}.
+     */
+    private final int[] bounds;
+
+    /**
+     * Creates the ranges covering each word whose bit is set in
+     * {@code changedWords}, for a chromosome with {@code length} genes.
+     */
+    /* package private */ GeneRanges(long[] changedWords, int length) {
+        int[] result = new int[8];
+        int size = 0;
+        int wordCount = Bits.wordCount(length);
+        int word = nextSetBit(changedWords, 0, wordCount);
+        while (word < wordCount) {
+            int end = nextClearBit(changedWords, word + 1, wordCount);
+            if (size + 2 > result.length) {
+                result = Arrays.copyOf(result, result.length * 2);
+            }
+            result[size++] = word << 6;
+            result[size++] = Math.min(length, end << 6);
+            word = nextSetBit(changedWords, end, wordCount);
+        }
+        this.bounds = Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Returns the number of ranges.
+     *
+     * @return the number of ranges
+     */
+    public int size() {
+        return bounds.length >>> 1;
+    }
+
+    /**
+     * Returns {@code true} if there are no ranges.
+     *
+     * @return {@code true} if no genes are included
+     */
+    public boolean isEmpty() {
+        return bounds.length == 0;
+    }
+
+    /**
+     * Returns the first gene in range {@code i}.
+     *
+     * @param i the index of the range
+     * @return the index of the first gene (inclusive)
+     * @throws IndexOutOfBoundsException if there is no range {@code i}
+     */
+    public int from(int i) {
+        checkBounds(i);
+        return bounds[2 * i];
+    }
+
+    /**
+     * Returns the gene just past the end of range {@code i}.
+     *
+     * @param i the index of the range
+     * @return the index past the last gene (exclusive)
+     * @throws IndexOutOfBoundsException if there is no range {@code i}
+     */
+    public int to(int i) {
+        checkBounds(i);
+        return bounds[2 * i + 1];
+    }
+
+    /**
+     * Returns the total number of genes in all of the ranges.
+     *
+     * @return the number of genes included
+     */
+    public int geneCount() {
+        int count = 0;
+        for (int i = 0; i < bounds.length; i += 2) {
+            count += bounds[i + 1] - bounds[i];
+        }
+        return count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof GeneRanges && Arrays.equals(bounds, ((GeneRanges)o).bounds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bounds);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < bounds.length; i += 2) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('[').append(bounds[i]).append(", ").append(bounds[i + 1]).append(')');
+        }
+        return sb.append(']').toString();
+    }
+
+    private void checkBounds(int i) {
+        if (i < 0 || i >= size()) {
+            throw new IndexOutOfBoundsException("Range index out of bounds. Expected 0 <= i < "
+                    + size() + ". Actual: " + i);
+        }
+    }
+
+    private static int nextSetBit(long[] bits, int from, int limit) {
+        while (from < limit && (bits[from >>> 6] & (1L << from)) == 0) {
+            ++from;
+        }
+        return from;
+    }
+
+    private static int nextClearBit(long[] bits, int from, int limit) {
+        while (from < limit && (bits[from >>> 6] & (1L << from)) != 0) {
+            ++from;
+        }
+        return from;
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.primitive;
+
+import java.util.List;
+
+/**
+ * A list of candidates that can return the fitness and chromosome of the
+ * candidate at an index without creating a {@link Candidate}. Selection ops
+ * that read many candidates should prefer these methods to {@link #get(int)}.
+ *
+ * @author chris@samsarin.com
+ */
+public interface IndexedCandidateList extends List<Candidate> {
+
+    /**
+     * Returns the fitness of the candidate at {@code index}.
+     *
+     * @param index the index of the candidate
+     * @return the candidate's fitness
+     */
+    double fitness(int index);
+
+    /**
+     * Returns the chromosome of the candidate at {@code index}.
+     *
+     * @param index the index of the candidate
+     * @return the candidate's chromosome
+     */
+    Chromosome chromosome(int index);
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.primitive;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A fixed number of chromosomes of the same length stored contiguously in a
+ * single {@link ByteBuffer}, outside of the Java heap. Each chromosome takes
+ * a fixed number of bytes (its stride), so the chromosome in a slot is found
+ * without any per-chromosome objects beyond a view, which is created once per
+ * slot and reused.
+ * <p/>
+ * The chromosome returned by {@link #get(int)} is a view of its slot: when
+ * the slot is overwritten with {@link #set(int, Chromosome)} the view changes
+ * too. Use {@link Chromosomes#detach(Chromosome)} to keep a chromosome that
+ * outlives its slot. This class is not thread safe, but different slots may
+ * be written by different threads at the same time.
+ *
+ * @author chris@samsarin.com
+ */
+public class PopulationStore {
+    private final ByteBuffer buffer;
+    private final int length;
+    private final int wordCount;
+    private final int stride;
+    private final BufferChromosome[] views;
+
+    /**
+     * Creates a store for {@code capacity} chromosomes of {@code length} genes
+     * in a newly allocated direct buffer. All genes are initially false.
+     *
+     * @param capacity the number of chromosomes to store
+     * @param length the length of each chromosome
+     * @throws IllegalArgumentException if {@code length < 1}, if
+     *         {@code capacity < 0} or if the store would not fit in a single
+     *         buffer
+     */
+    public PopulationStore(int capacity, int length) {
+        this(ByteBuffer.allocateDirect(checkedSize(capacity, length)), length);
+    }
+
+    /**
+     * Creates a store that keeps chromosomes of {@code length} genes in
+     * {@code buffer}, for example a memory-mapped file. The store holds as
+     * many chromosomes as fit in the buffer's capacity.
+     *
+     * @param buffer the buffer to store chromosomes in
+     * @param length the length of each chromosome
+     * @throws IllegalArgumentException if {@code length < 1}
+     */
+    public PopulationStore(ByteBuffer buffer, int length) {
+        if (length < 1) {
+            throw new IllegalArgumentException("length must be at least 1. Actual: " + length);
+        }
+        this.buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.length = length;
+        this.wordCount = Bits.wordCount(length);
+        this.stride = wordCount * 8;
+        this.views = new BufferChromosome[buffer.capacity() / stride];
+        for (int i = 0; i < views.length; ++i) {
+            views[i] = new BufferChromosome(this.buffer, i * stride, length);
+        }
+    }
+
+    /**
+     * Returns the number of chromosomes in this store.
+     *
+     * @return the number of slots
+     */
+    public int capacity() {
+        return views.length;
+    }
+
+    /**
+     * Returns the length of the chromosomes in this store.
+     *
+     * @return the number of genes per chromosome
+     */
+    public int chromosomeLength() {
+        return length;
+    }
+
+    /**
+     * Returns a view of the chromosome in slot {@code index}. The same view is
+     * returned each time.
+     *
+     * @param index the slot
+     * @return the chromosome in the slot
+     */
+    public Chromosome get(int index) {
+        return views[index];
+    }
+
+    /**
+     * Copies the genes of {@code chromosome} into slot {@code index}.
+     *
+     * @param index the slot
+     * @param chromosome the chromosome to copy
+     * @throws IllegalArgumentException if the chromosome's length is not the
+     *         length of this store's chromosomes
+     */
+    public void set(int index, Chromosome chromosome) {
+        BufferChromosome view = views[index];
+        if (chromosome == view || chromosome == view.trackingDerivations()) {
+            return;
+        }
+        if (chromosome.length() != length) {
+            throw new IllegalArgumentException("Expected a chromosome of length " + length
+                    + ". Actual: " + chromosome.length());
+        }
+
+        AbstractChromosome source = chromosome instanceof AbstractChromosome
+                ? (AbstractChromosome)chromosome
+                : (AbstractChromosome)new ChromosomeBuilder(chromosome).toChromosome();
+        int offset = index * stride;
+        for (int i = 0; i < wordCount; ++i) {
+            buffer.putLong(offset + (i << 3), source.word(i));
+        }
+        view.invalidate();
+    }
+
+    private static int checkedSize(int capacity, int length) {
+        if (length < 1) {
+            throw new IllegalArgumentException("length must be at least 1. Actual: " + length);
+        }
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative. Actual: " + capacity);
+        }
+        long size = (long)capacity * Bits.wordCount(length) * 8;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A store of " + capacity + " chromosomes of length "
+                    + length + " does not fit in a buffer");
+        }
+        return (int)size;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.primitive;
+
+/**
+ * A fast, splittable pseudo-random number generator based on the SplitMix64
+ * algorithm. The same seed always produces the same sequence of values, so a
+ * run can be replayed exactly from its seed.
+ * <p/>
+ * {@link #split()} derives a new, statistically independent generator from
+ * this one. Splitting is how independent streams are given to each thread or
+ * task: the streams never contend with each other, and as long as they are
+ * split off in a fixed order the results do not depend on how the work is
+ * scheduled.
+ * <p/>
+ * This class is not thread safe. Each thread should use its own generator,
+ * split from a common parent.
+ *
+ * @author chris@samsarin.com
+ */
+public class Rng {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final double DOUBLE_UNIT = 1.0 / (1L << 53);
+
+    private long seed;
+    private final long gamma;
+
+    /**
+     * Creates a new generator with the given seed.
+     *
+     * @param seed the initial seed
+     */
+    public Rng(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    private Rng(long seed, long gamma) {
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * Creates a new generator with a seed that is likely to be different from
+     * any other generator created by this method.
+     *
+     * @return the new generator
+     */
+    public static Rng fromEntropy() {
+        return new Rng(mix64(System.nanoTime()) ^ mix64(System.identityHashCode(new Object()) + GOLDEN_GAMMA));
+    }
+
+    /**
+     * Re-creates a generator from state previously returned by
+     * {@link #state()} and {@link #gamma()}. The new generator produces the
+     * same values that the original generator would have produced next.
+     *
+     * @param state the generator state
+     * @param gamma the generator's increment
+     * @return the restored generator
+     * @throws IllegalArgumentException if {@code gamma} is not odd
+     */
+    public static Rng restore(long state, long gamma) {
+        if ((gamma & 1) == 0) {
+            throw new IllegalArgumentException("gamma must be odd. Actual: " + gamma);
+        }
+        return new Rng(state, gamma);
+    }
+
+    /**
+     * Returns the current state of this generator. Together with
+     * {@link #gamma()} this can be saved and later passed to
+     * {@link #restore(long, long)}.
+     *
+     * @return the current state
+     */
+    public long state() {
+        return seed;
+    }
+
+    /**
+     * Returns the increment this generator adds to its state for each value.
+     *
+     * @return the increment
+     * @see #state()
+     */
+    public long gamma() {
+        return gamma;
+    }
+
+    /**
+     * Returns a new generator that is split off from this generator. The new
+     * generator produces a sequence of values that is independent of the
+     * values produced by this one. Splitting advances the state of this
+     * generator.
+     *
+     * @return the new generator
+     */
+    public Rng split() {
+        return new Rng(nextLong(), mixGamma(nextSeed()));
+    }
+
+    /**
+     * Returns a uniformly distributed {@code long} value.
+     *
+     * @return the next value
+     */
+    public long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    /**
+     * Returns a uniformly distributed {@code int} value.
+     *
+     * @return the next value
+     */
+    public int nextInt() {
+        return (int)(nextLong() >>> 32);
+    }
+
+    /**
+     * Returns a uniformly distributed value from 0, inclusive, to
+     * {@code bound}, exclusive.
+     *
+     * @param bound the upper bound (exclusive)
+     * @return the next value
+     * @throws IllegalArgumentException if {@code bound <= 0}
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive. Actual: " + bound);
+        }
+
+        // Rejection sampling avoids the bias of a plain modulo
+        int mask = bound - 1;
+        int value = nextInt();
+        if ((bound & mask) == 0) {
+            return value & mask;
+        }
+        for (int u = value >>> 1; u + mask - (value = u % bound) < 0; u = nextInt() >>> 1) {
+        }
+        return value;
+    }
+
+    /**
+     * Returns a uniformly distributed value from 0.0, inclusive, to 1.0,
+     * exclusive.
+     *
+     * @return the next value
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * Returns a uniformly distributed {@code boolean} value.
+     *
+     * @return the next value
+     */
+    public boolean nextBoolean() {
+        return nextLong() < 0;
+    }
+
+    private long nextSeed() {
+        return seed += gamma;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return (n < 24) ? z ^ 0xAAAAAAAAAAAAAAAAL : z;
+    }
+}
@@ -6,6 +6,9 @@ package com.samsarin.gatu.chromosome;
 
 import com.samsarin.gatu.primitive.Chromosome;
 import com.samsarin.gatu.primitive.ChromosomeBuilder;
+import com.samsarin.gatu.primitive.Chromosomes;
+import com.samsarin.gatu.primitive.Derivation;
+import com.samsarin.gatu.primitive.GeneRanges;
 import org.junit.Test;
 
 import static junit.framework.Assert.*;
@@ -108,4 +111,132 @@ public class ChromosomeBuilderTest {
         assertTrue(c.get(3));
         assertFalse(c.get(4));
     }
+
+    @Test
+    public void invertAcrossWords() {
+        Chromosome c = Chromosomes.random(300);
+
+        ChromosomeBuilder cb = new ChromosomeBuilder(c);
+        cb.invert(17, 250);
+        for (int i = 0; i < c.length(); ++i) {
+            boolean expected = (i < 17 || i >= 250) ? c.get(i) : c.get(250 - 1 - (i - 17));
+            assertEquals(expected, cb.get(i));
+        }
+    }
+
+    @Test
+    public void getAndSetWord() {
+        ChromosomeBuilder cb = new ChromosomeBuilder(70);
+        assertEquals(2, cb.wordCount());
+
+        cb.setWord(0, 5L);
+        assertTrue(cb.get(0));
+        assertFalse(cb.get(1));
+        assertTrue(cb.get(2));
+
+        // Genes past the end of the chromosome are ignored
+        cb.setWord(1, -1L);
+        assertEquals(0x3FL, cb.getWord(1));
+    }
+
+    @Test
+    public void xorWord() {
+        ChromosomeBuilder cb = new ChromosomeBuilder(64).set(3, true);
+        cb.xorWord(0, (1L << 3) | (1L << 63));
+        assertFalse(cb.get(3));
+        assertTrue(cb.get(63));
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void getWordOutOfBounds() {
+        new ChromosomeBuilder(64).getWord(1);
+    }
+
+    @Test
+    public void copyRange() {
+        Chromosome source = Chromosomes.random(200);
+        Chromosome c = new ChromosomeBuilder(200).copyRange(source, 5, 150).toChromosome();
+        for (int i = 0; i < c.length(); ++i) {
+            assertEquals(i >= 5 && i < 150 && source.get(i), c.get(i));
+        }
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void copyRangeOutOfBounds() {
+        new ChromosomeBuilder(5).copyRange(Chromosomes.empty(4), 0, 5);
+    }
+
+    @Test
+    public void builderIsNotSharedWithChromosome() {
+        ChromosomeBuilder cb = new ChromosomeBuilder(5).set(0, true);
+        Chromosome c = cb.toChromosome();
+        cb.set(0, false).set(1, true);
+
+        assertTrue(c.get(0));
+        assertFalse(c.get(1));
+    }
+
+    @Test
+    public void derivationRecordsChangedWords() {
+        Chromosome parent = Chromosomes.trackDerivations(Chromosomes.empty(200));
+        Chromosome c = new ChromosomeBuilder(parent)
+                .mutate(3)
+                .mutate(130)
+                .set(10, false)
+                .copyRange(Chromosomes.empty(200), 64, 128)
+                .toChromosome();
+
+        Derivation derivation = Chromosomes.derivation(c);
+        assertSame(parent, derivation.parent());
+        GeneRanges changes = derivation.changes();
+        assertEquals(2, changes.size());
+        assertEquals(0, changes.from(0));
+        assertEquals(64, changes.to(0));
+        assertEquals(128, changes.from(1));
+        assertEquals(192, changes.to(1));
+        assertEquals(128, changes.geneCount());
+    }
+
+    @Test
+    public void derivationMergesAdjacentWordsAndClipsToLength() {
+        Chromosome c = new ChromosomeBuilder(Chromosomes.trackDerivations(Chromosomes.empty(100)))
+                .invert(0, 100).mutate(0).toChromosome();
+        GeneRanges changes = Chromosomes.derivation(c).changes();
+        assertEquals(1, changes.size());
+        assertEquals(0, changes.from(0));
+        assertEquals(100, changes.to(0));
+    }
+
+    @Test
+    public void derivedChromosomeKeepsOriginalParent() {
+        Chromosome parent = Chromosomes.trackDerivations(Chromosomes.empty(200));
+        Chromosome child = new ChromosomeBuilder(parent).mutate(0).toChromosome();
+        Chromosome grandchild = new ChromosomeBuilder(child).mutate(199).toChromosome();
+
+        Derivation derivation = Chromosomes.derivation(grandchild);
+        assertSame(parent, derivation.parent());
+        assertEquals(2, derivation.changes().size());
+        assertEquals(1, Chromosomes.derivation(child).changes().size());
+    }
+
+    @Test
+    public void detachDropsDerivation() {
+        Chromosome parent = Chromosomes.trackDerivations(Chromosomes.random(100));
+        Chromosome child = new ChromosomeBuilder(parent).mutate(5).toChromosome();
+        assertNull(Chromosomes.derivation(parent));
+        assertNull(Chromosomes.derivation(new ChromosomeBuilder(100).toChromosome()));
+
+        Chromosome detached = Chromosomes.detach(child);
+        assertNull(Chromosomes.derivation(detached));
+        assertEquals(child, detached);
+    }
+
+    @Test
+    public void untrackedChromosomeHasNoDerivations() {
+        Chromosome parent = Chromosomes.random(100);
+        Chromosome child = new ChromosomeBuilder(parent).mutate(5).toChromosome();
+        assertNull(Chromosomes.derivation(child));
+        assertNull(Chromosomes.derivation(new ChromosomeBuilder(child).mutate(6).toChromosome()));
+        assertEquals(parent, Chromosomes.trackDerivations(parent));
+    }
 }
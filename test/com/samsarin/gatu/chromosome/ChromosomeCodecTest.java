@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.chromosome;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.ChromosomeBuilder;
+import com.samsarin.gatu.primitive.ChromosomeCodec;
+import com.samsarin.gatu.primitive.Chromosomes;
+import com.samsarin.gatu.primitive.Rng;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author chris@samsarin.com
+ */
+public class ChromosomeCodecTest {
+    @Test
+    public void roundTrip() {
+        Chromosome c = Chromosomes.random(130);
+        ByteBuffer buffer = ByteBuffer.allocate(ChromosomeCodec.encodedSize(c));
+        ChromosomeCodec.write(c, buffer);
+        assertFalse(buffer.hasRemaining());
+
+        buffer.flip();
+        assertEquals(c, ChromosomeCodec.read(buffer));
+    }
+
+    @Test
+    public void wordsAreLittleEndian() {
+        Chromosome c = new ChromosomeBuilder(8).set(0, true).toChromosome();
+        ByteBuffer buffer = ByteBuffer.allocate(ChromosomeCodec.encodedSize(c));
+        ChromosomeCodec.write(c, buffer);
+
+        assertEquals(8, buffer.get(0));
+        assertEquals(1, buffer.get(4));
+        assertEquals(0, buffer.get(11));
+    }
+
+    @Test
+    public void populationFile() throws IOException {
+        List<Chromosome> population = population();
+        File file = File.createTempFile("gatu", ".population");
+        try {
+            ChromosomeCodec.writePopulation(population, file, true);
+            assertEquals(ChromosomeCodec.encodedSize(population, true), file.length());
+            assertEquals(population, ChromosomeCodec.readPopulation(file));
+
+            List<Chromosome> mapped = ChromosomeCodec.mapPopulation(file);
+            assertEquals(population, mapped);
+            for (int i = 0; i < population.size(); ++i) {
+                assertEquals(population.get(i).fingerprint(), mapped.get(i).fingerprint());
+            }
+
+            // Mapped chromosomes can be changed through a builder
+            int last = mapped.size() - 1;
+            Chromosome changed = new ChromosomeBuilder(mapped.get(last)).mutate(0).toChromosome();
+            assertFalse(changed.equals(population.get(last)));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void checksumMismatch() throws IOException {
+        File file = File.createTempFile("gatu", ".population");
+        try {
+            ChromosomeCodec.writePopulation(population(), file, true);
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.seek(24);
+                raf.write(raf.read() ^ 0x10);
+            } finally {
+                raf.close();
+            }
+            ChromosomeCodec.mapPopulation(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private List<Chromosome> population() {
+        Rng random = new Rng(3);
+        List<Chromosome> population = new ArrayList<Chromosome>();
+        for (int length = 0; length < 200; length += 37) {
+            population.add(Chromosomes.random(length, random));
+        }
+        return population;
+    }
+}
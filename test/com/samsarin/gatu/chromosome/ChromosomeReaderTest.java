@@ -10,6 +10,7 @@ import org.junit.Test;
 import com.samsarin.gatu.primitive.Chromosome;
 import com.samsarin.gatu.primitive.ChromosomeBuilder;
 import com.samsarin.gatu.primitive.ChromosomeReader;
+import com.samsarin.gatu.primitive.Chromosomes;
 
 /**
  * @author <chris@samsarin.com>
@@ -77,4 +78,29 @@ public class ChromosomeReaderTest {
         assertFalse(reader.readBit());
         assertFalse(reader.readBit());
     }
+
+    @Test
+    public void readLongMatchesBitByBit() {
+        final Chromosome c = Chromosomes.random(1000);
+        
+        // A chromosome that the reader can only access one gene at a time
+        Chromosome unpacked = new Chromosome() {
+            public int length() {
+                return c.length();
+            }
+
+            public boolean get(int index) {
+                return c.get(index);
+            }
+        };
+        
+        ChromosomeReader packedReader = new ChromosomeReader(c);
+        ChromosomeReader unpackedReader = new ChromosomeReader(unpacked);
+        int numBits = 1;
+        while (packedReader.remaining() >= numBits) {
+            assertEquals(unpackedReader.readLong(numBits), packedReader.readLong(numBits));
+            assertEquals(unpackedReader.index(), packedReader.index());
+            numBits = numBits % Long.SIZE + 1;
+        }
+    }
 }
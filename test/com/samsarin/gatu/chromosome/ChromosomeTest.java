@@ -53,4 +53,24 @@ public class ChromosomeTest {
         assertTrue(new ChromosomeBuilder(2).set(0, true).toChromosome().hashCode() !=
                 new ChromosomeBuilder(2).toChromosome().hashCode());
     }
+
+    @Test
+    public void fingerprint() {
+        Chromosome c = Chromosomes.random(1000);
+        assertEquals(c.fingerprint(), new ChromosomeBuilder(c).toChromosome().fingerprint());
+        assertTrue(c.fingerprint() != new ChromosomeBuilder(c).mutate(999).toChromosome().fingerprint());
+        assertTrue(Chromosomes.empty(10).fingerprint() != Chromosomes.empty(11).fingerprint());
+
+        // Other implementations get the same fingerprint from the default method
+        final Chromosome genes = Chromosomes.random(100);
+        assertEquals(genes.fingerprint(), new Chromosome() {
+            public int length() {
+                return genes.length();
+            }
+
+            public boolean get(int index) {
+                return genes.get(index);
+            }
+        }.fingerprint());
+    }
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.chromosome;
+
+import org.junit.Test;
+
+import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.Chromosomes;
+import com.samsarin.gatu.primitive.PopulationStore;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author chris@samsarin.com
+ */
+public class PopulationStoreTest {
+    @Test
+    public void setAndGet() {
+        PopulationStore store = new PopulationStore(3, 100);
+        assertEquals(3, store.capacity());
+
+        Chromosome c = Chromosomes.random(100);
+        store.set(1, c);
+        assertEquals(c, store.get(1));
+        assertEquals(c.fingerprint(), store.get(1).fingerprint());
+        assertEquals(Chromosomes.empty(100), store.get(0));
+    }
+
+    @Test
+    public void viewFollowsItsSlot() {
+        PopulationStore store = new PopulationStore(1, 100);
+        Chromosome view = store.get(0);
+        Chromosome c1 = Chromosomes.random(100);
+        Chromosome c2 = Chromosomes.random(100);
+
+        store.set(0, c1);
+        Chromosome detached = Chromosomes.detach(view);
+        store.set(0, c2);
+
+        assertEquals(c2, view);
+        assertEquals(c2.fingerprint(), view.fingerprint());
+        assertEquals(c1, detached);
+    }
+
+    @Test
+    public void trackingViewFollowsItsSlot() {
+        PopulationStore store = new PopulationStore(1, 100);
+        Chromosome tracking = Chromosomes.trackDerivations(store.get(0));
+        assertSame(tracking, Chromosomes.trackDerivations(store.get(0)));
+        assertSame(tracking, Chromosomes.trackDerivations(tracking));
+
+        Chromosome c1 = Chromosomes.random(100);
+        Chromosome c2 = Chromosomes.random(100);
+        store.set(0, c1);
+        assertEquals(c1.fingerprint(), tracking.fingerprint());
+        store.set(0, c2);
+        assertEquals(c2, tracking);
+        assertEquals(c2.fingerprint(), tracking.fingerprint());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setWrongLength() {
+        new PopulationStore(1, 100).set(0, Chromosomes.random(99));
+    }
+}
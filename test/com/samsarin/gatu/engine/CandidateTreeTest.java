@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.engine;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.samsarin.gatu.primitive.Candidate;
+import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.Chromosomes;
+
+/**
+ * @author chris@samsarin.com
+ */
+public class CandidateTreeTest {
+    private final Chromosome chromosome = Chromosomes.empty(1);
+
+    @Test
+    public void ordered() {
+        Random random = new Random(1);
+        CandidateTree tree = new CandidateTree();
+        List<Candidate> expected = new ArrayList<Candidate>();
+        for (int i = 0; i < 500; ++i) {
+            Candidate candidate = new CandidateImpl(random.nextInt(100), chromosome);
+            tree.add(candidate);
+            expected.add(candidate);
+        }
+
+        for (int i = 0; i < 200; ++i) {
+            Candidate removed = tree.remove(random.nextInt(tree.size()));
+            for (int j = 0; j < expected.size(); ++j) {
+                if (expected.get(j) == removed) {
+                    expected.remove(j);
+                    break;
+                }
+            }
+        }
+
+        Collections.sort(expected);
+        assertEquals(expected.size(), tree.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            assertEquals(expected.get(i).fitness(), tree.get(i).fitness(), 0);
+        }
+        assertEquals(expected.size(), tree.snapshot().size());
+    }
+
+    @Test
+    public void fitnessSum() {
+        CandidateTree tree = new CandidateTree();
+        tree.add(new CandidateImpl(3, chromosome));
+        tree.add(new CandidateImpl(1, chromosome));
+        tree.add(new CandidateImpl(2, chromosome));
+        assertEquals(6, tree.fitnessSum(), 0);
+
+        tree.remove(0);
+        assertEquals(5, tree.fitnessSum(), 0);
+    }
+
+    @Test
+    public void indexOfCumulativeFitness() {
+        CandidateTree tree = new CandidateTree();
+        tree.add(new CandidateImpl(3, chromosome));
+        tree.add(new CandidateImpl(1, chromosome));
+        tree.add(new CandidateImpl(2, chromosome));
+
+        // Cumulative ranges are [0, 1), [1, 3), [3, 6)
+        assertEquals(0, tree.indexOfCumulativeFitness(0));
+        assertEquals(0, tree.indexOfCumulativeFitness(0.5));
+        assertEquals(1, tree.indexOfCumulativeFitness(1));
+        assertEquals(1, tree.indexOfCumulativeFitness(2.9));
+        assertEquals(2, tree.indexOfCumulativeFitness(3));
+        assertEquals(2, tree.indexOfCumulativeFitness(5.9));
+    }
+}
@@ -4,17 +4,30 @@
 
 package com.samsarin.gatu.engine;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import org.junit.Test;
 
+import com.samsarin.gatu.op.AsyncFitnessOp;
+import com.samsarin.gatu.op.BoundedFitnessOp;
+import com.samsarin.gatu.op.Evaluation;
 import com.samsarin.gatu.op.FitnessOp;
+import com.samsarin.gatu.op.IncrementalFitnessOp;
 import com.samsarin.gatu.op.Ops;
+import com.samsarin.gatu.op.TerminationOp;
 import com.samsarin.gatu.primitive.Candidate;
 import com.samsarin.gatu.primitive.Chromosome;
 import com.samsarin.gatu.primitive.ChromosomeReader;
 import com.samsarin.gatu.primitive.Chromosomes;
+import com.samsarin.gatu.primitive.GeneRanges;
+import com.samsarin.gatu.primitive.Rng;
 
 import static junit.framework.Assert.*;
 
@@ -37,6 +50,409 @@ public class EngineIntegrationTest {
         assertEquals((double)15, candidate.fitness());
     }
     
+    @Test
+    public void callWithStochasticUniversalSampling() throws Exception {
+        List<Chromosome> population = initialPopulation();
+        Engine engine = new EngineBuilder(population, fitnessOp())
+                            .addMutationOp(Ops.pointMutation(0.001))
+                            .addMutationOp(Ops.inversion(0.01))
+                            .setSelectionOp(Ops.stochasticUniversalSampling())
+                            .build();
+        Candidate candidate = engine.call();
+        assertEquals((double)15, candidate.fitness());
+    }
+
+    @Test
+    public void callWithPartialSort() throws Exception {
+        Engine engine = new EngineBuilder(initialPopulation(), fitnessOp())
+                            .addMutationOp(Ops.pointMutation(0.001))
+                            .addMutationOp(Ops.inversion(0.01))
+                            .setSelectionOp(Ops.tournamentSelection(3))
+                            .setPartialSort(true)
+                            .build();
+        Candidate candidate = engine.call();
+        assertEquals((double)15, candidate.fitness());
+    }
+
+    @Test
+    public void callWithExecutor() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Chromosome> population = initialPopulation();
+            Engine engine = new EngineBuilder(population, fitnessOp())
+                                .addMutationOp(Ops.pointMutation(0.001))
+                                .addMutationOp(Ops.inversion(0.01))
+                                .setExecutor(executor, 3)
+                                .build();
+            Candidate candidate = engine.call();
+            assertEquals((double)15, candidate.fitness());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void callSteadyState() throws Exception {
+        List<Chromosome> population = initialPopulation();
+        Engine engine = new EngineBuilder(population, fitnessOp())
+                            .addMutationOp(Ops.pointMutation(0.001))
+                            .addMutationOp(Ops.inversion(0.01))
+                            .setSteadyState(2)
+                            .build();
+        Candidate candidate = engine.call();
+        assertEquals((double)15, candidate.fitness());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void steadyStateRejectsBatchSelection() throws Exception {
+        new EngineBuilder(initialPopulation(), fitnessOp())
+                .setSelectionOp(Ops.stochasticUniversalSampling())
+                .setSteadyState(2)
+                .build();
+    }
+
+    @Test
+    public void callAsync() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Chromosome> population = initialPopulation();
+            Engine engine = new EngineBuilder(population, fitnessOp())
+                                .addMutationOp(Ops.pointMutation(0.001))
+                                .addMutationOp(Ops.inversion(0.01))
+                                .setAsyncFitness(Ops.asyncFitness(fitnessOp(), executor), 4)
+                                .build();
+            Candidate candidate = engine.call();
+            assertEquals((double)15, candidate.fitness());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void callAsyncBoundsEvaluationsInFlight() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final FitnessOp fitnessOp = fitnessOp();
+            final AtomicInteger inFlight = new AtomicInteger();
+            final AtomicInteger maxInFlight = new AtomicInteger();
+            AsyncFitnessOp asyncFitnessOp = new AsyncFitnessOp() {
+                public CompletableFuture<Double> fitness(final Chromosome chromosome) {
+                    // Evaluations are only submitted from the engine's thread
+                    maxInFlight.set(Math.max(maxInFlight.get(), inFlight.incrementAndGet()));
+                    return CompletableFuture.supplyAsync(new Supplier<Double>() {
+                        public Double get() {
+                            inFlight.decrementAndGet();
+                            return fitnessOp.fitness(chromosome);
+                        }
+                    }, executor);
+                }
+            };
+
+            new EngineBuilder(initialPopulation(), fitnessOp)
+                    .setAsyncFitness(asyncFitnessOp, 2)
+                    .setTerminationOp(Ops.terminateAtGeneration(5))
+                    .build()
+                    .call();
+            assertTrue(maxInFlight.get() <= 2);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void callIslands() throws Exception {
+        Engine engine = new IslandEngineBuilder()
+                            .addIsland(new EngineBuilder(initialPopulation(), fitnessOp())
+                                .addMutationOp(Ops.pointMutation(0.001))
+                                .setTerminationOp(Ops.terminateAtGeneration(500)))
+                            .addIsland(new EngineBuilder(initialPopulation(), fitnessOp())
+                                .setCrossoverOp(Ops.uniformCrossover())
+                                .addMutationOp(Ops.inversion(0.01))
+                                .setTerminationOp(Ops.terminateAtGeneration(500)))
+                            .setMigrationInterval(5)
+                            .setTopology(MigrationTopology.RANDOM)
+                            .build();
+        Candidate candidate = engine.call();
+        assertEquals((double)15, candidate.fitness());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void islandsRejectCheckpoints() throws Exception {
+        new IslandEngineBuilder()
+                .addIsland(new EngineBuilder(initialPopulation(), fitnessOp())
+                    .setCheckpoint(new File("islands.checkpoint"), 10))
+                .build();
+    }
+
+    @Test
+    public void callWithSeedIsRepeatable() throws Exception {
+        assertEquals(seededRun(42, null), seededRun(42, null));
+    }
+
+    @Test
+    public void callWithParallelBreedingIsRepeatable() throws Exception {
+        ExecutorService oneThread = Executors.newSingleThreadExecutor();
+        ExecutorService fourThreads = Executors.newFixedThreadPool(4);
+        try {
+            assertEquals(seededRun(42, oneThread), seededRun(42, fourThreads));
+        } finally {
+            oneThread.shutdown();
+            fourThreads.shutdown();
+        }
+    }
+
+    @Test
+    public void callWithOffHeapPopulation() throws Exception {
+        List<List<Chromosome>> onHeap = record(seededBuilder(42), 50);
+        List<List<Chromosome>> offHeap = record(seededBuilder(42).setOffHeapPopulation(true), 50);
+        assertEquals(onHeap, offHeap);
+    }
+
+    @Test
+    public void resumeFromCheckpoint() throws Exception {
+        File file = File.createTempFile("gatu", ".checkpoint");
+        try {
+            List<List<Chromosome>> uninterrupted = record(seededBuilder(42), 50);
+            record(seededBuilder(42).setCheckpoint(file, 25), 25);
+            List<List<Chromosome>> resumed = record(configure(EngineBuilder.fromCheckpoint(file, fitnessOp())), 50);
+            assertEquals(uninterrupted.subList(25, 50), resumed);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void checkpointFailureDoesNotHideRunFailure() throws Exception {
+        final RuntimeException stop = new RuntimeException("stop");
+        File file = new File(new File("no-such-directory"), "gatu.checkpoint");
+        try {
+            seededBuilder(42)
+                    .setCheckpoint(file, 1)
+                    .setTerminationOp(new TerminationOp() {
+                        public boolean shouldTerminate(int generationNum, Candidate bestCandidate) {
+                            if (generationNum == 1) {
+                                throw stop;
+                            }
+                            return false;
+                        }
+                    })
+                    .build()
+                    .call();
+            fail("Expected the termination op to stop the run");
+        } catch (RuntimeException e) {
+            assertSame(stop, e);
+            assertEquals(1, e.getSuppressed().length);
+        }
+    }
+
+    @Test
+    public void callWithIncrementalFitness() throws Exception {
+        List<List<Chromosome>> expected = record(seededBuilder(42), 50);
+
+        for (boolean offHeap : new boolean[] {false, true}) {
+            final AtomicInteger full = new AtomicInteger();
+            final AtomicInteger incremental = new AtomicInteger();
+            final FitnessOp fitnessOp = fitnessOp();
+            IncrementalFitnessOp<Void> incrementalFitnessOp = new IncrementalFitnessOp<Void>() {
+                public double fitness(Chromosome chromosome) {
+                    return fitnessOp.fitness(chromosome);
+                }
+
+                public Evaluation<Void> evaluate(Chromosome chromosome) {
+                    full.incrementAndGet();
+                    return new Evaluation<Void>(fitness(chromosome), null);
+                }
+
+                public Evaluation<Void> evaluate(Chromosome chromosome, Chromosome parent,
+                        Evaluation<Void> parentEvaluation, GeneRanges changes) {
+                    incremental.incrementAndGet();
+                    // Only the first 4 genes count
+                    if (changes.isEmpty() || changes.from(0) >= 4) {
+                        return parentEvaluation;
+                    }
+                    return new Evaluation<Void>(fitness(chromosome), null);
+                }
+            };
+
+            EngineBuilder builder = configure(new EngineBuilder(seededPopulation(42),
+                    incrementalFitnessOp)).setSeed(42).setOffHeapPopulation(offHeap);
+            assertEquals(expected, record(builder, 50));
+            assertEquals(20, full.get());
+            assertTrue(incremental.get() > 0);
+        }
+    }
+
+    @Test
+    public void callWithBoundedFitness() throws Exception {
+        final FitnessOp fitnessOp = fitnessOp();
+        final AtomicInteger numBounded = new AtomicInteger();
+        final AtomicInteger numExact = new AtomicInteger();
+        BoundedFitnessOp boundedFitnessOp = boundedFitnessOp(numBounded, numExact);
+
+        // Most candidates whose evaluation is cut short are never evaluated
+        // in full: a tournament of bounded candidates only evaluates the one
+        // with the greatest bound in full, and the others against its fitness
+        AtomicInteger numCutShort = new AtomicInteger();
+        AtomicInteger numEvaluatedInFull = new AtomicInteger();
+        configure(new EngineBuilder(seededPopulation(42), countingOnesFitnessOp(numCutShort, numEvaluatedInFull)))
+                .setSelectionOp(Ops.tournamentSelection(3))
+                .setSeed(42)
+                .setTerminationOp(Ops.terminateAtGeneration(50))
+                .build()
+                .call();
+        assertTrue(numCutShort.get() > 0);
+        assertTrue(numEvaluatedInFull.get() * 4 < numCutShort.get());
+
+        // Listeners only see exact fitness
+        final List<Boolean> exact = new ArrayList<Boolean>();
+        EngineBuilder builder = configure(new EngineBuilder(seededPopulation(42), boundedFitnessOp))
+                .setSelectionOp(Ops.tournamentSelection(2))
+                .setSeed(42)
+                .addListener(new EngineListener() {
+                    public void onGeneration(int generationNum, Candidate bestCandidate,
+                            List<Candidate> candidates) {
+                        for (Candidate candidate : candidates) {
+                            exact.add(candidate.fitness() == fitnessOp.fitness(candidate.chromosome()));
+                        }
+                    }
+                });
+        record(builder, 50);
+        assertFalse(exact.contains(false));
+
+        // Fitness-proportional selection needs every fitness to be exact
+        numBounded.set(0);
+        assertEquals(record(seededBuilder(42), 50),
+                record(configure(new EngineBuilder(seededPopulation(42), boundedFitnessOp)).setSeed(42), 50));
+        assertEquals(0, numBounded.get());
+    }
+
+    @Test
+    public void resumeFromCheckpointWithBoundedFitness() throws Exception {
+        BoundedFitnessOp boundedFitnessOp = boundedFitnessOp(new AtomicInteger(), new AtomicInteger());
+        File file = File.createTempFile("gatu", ".checkpoint");
+        try {
+            List<List<Chromosome>> uninterrupted = record(configure(
+                    new EngineBuilder(seededPopulation(42), boundedFitnessOp))
+                    .setSelectionOp(Ops.tournamentSelection(2)).setSeed(42), 50);
+            record(configure(new EngineBuilder(seededPopulation(42), boundedFitnessOp))
+                    .setSelectionOp(Ops.tournamentSelection(2)).setSeed(42).setCheckpoint(file, 25), 25);
+            List<List<Chromosome>> resumed = record(configure(EngineBuilder.fromCheckpoint(file, boundedFitnessOp))
+                    .setSelectionOp(Ops.tournamentSelection(2)), 50);
+            assertEquals(uninterrupted.subList(25, 50), resumed);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Returns a bounded op whose fitness is the number of genes that are set.
+     * It stops counting once the genes left can not reach the cutoff and
+     * returns the most the chromosome could have. Counts the evaluations cut
+     * short and the bounded candidates evaluated in full, which the engine
+     * does without a cutoff.
+     */
+    private BoundedFitnessOp countingOnesFitnessOp(final AtomicInteger numCutShort,
+            final AtomicInteger numEvaluatedInFull) {
+        return new BoundedFitnessOp() {
+            public double fitness(Chromosome chromosome) {
+                numEvaluatedInFull.incrementAndGet();
+                return fitness(chromosome, Double.NEGATIVE_INFINITY);
+            }
+
+            public double fitness(Chromosome chromosome, double cutoff) {
+                int length = chromosome.length();
+                int count = 0;
+                for (int i = 0; i < length; ++i) {
+                    if (count + length - i < cutoff) {
+                        numCutShort.incrementAndGet();
+                        return count + length - i;
+                    }
+                    if (chromosome.get(i)) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Returns a bounded version of {@link #fitnessOp()} that returns the
+     * largest value below the cutoff for every chromosome that falls short
+     * of it. Counts the bounded evaluations and the evaluations in full of
+     * bounded candidates.
+     */
+    private BoundedFitnessOp boundedFitnessOp(final AtomicInteger numBounded, final AtomicInteger numExact) {
+        final FitnessOp fitnessOp = fitnessOp();
+        return new BoundedFitnessOp() {
+            public double fitness(Chromosome chromosome) {
+                numExact.incrementAndGet();
+                return fitnessOp.fitness(chromosome);
+            }
+
+            public double fitness(Chromosome chromosome, double cutoff) {
+                double fitness = fitnessOp.fitness(chromosome);
+                if (fitness < cutoff) {
+                    numBounded.incrementAndGet();
+                    return Math.nextDown(cutoff);
+                }
+                return fitness;
+            }
+        };
+    }
+
+    /**
+     * Runs an engine with a fixed seed and returns the population of every
+     * generation. If an executor is given offspring are bred in parallel.
+     */
+    private List<List<Chromosome>> seededRun(long seed, ExecutorService executor) {
+        EngineBuilder builder = seededBuilder(seed);
+        if (executor != null) {
+            builder.setExecutor(executor, 4).setParallelBreeding(true);
+        }
+        return record(builder, 50);
+    }
+
+    private EngineBuilder seededBuilder(long seed) {
+        return configure(new EngineBuilder(seededPopulation(seed), fitnessOp())).setSeed(seed);
+    }
+
+    private List<Chromosome> seededPopulation(long seed) {
+        List<Chromosome> population = new ArrayList<Chromosome>();
+        Rng random = new Rng(seed);
+        for (int i = 0; i < 20; ++i) {
+            population.add(Chromosomes.random(64, random));
+        }
+        return population;
+    }
+
+    private EngineBuilder configure(EngineBuilder builder) {
+        return builder.addMutationOp(Ops.pointMutation(0.01))
+                      .addMutationOp(Ops.inversion(0.01));
+    }
+
+    /**
+     * Runs the engine until {@code numGenerations} and returns the population
+     * of every generation it was notified of.
+     */
+    private List<List<Chromosome>> record(EngineBuilder builder, int numGenerations) {
+        final List<List<Chromosome>> generations = new ArrayList<List<Chromosome>>();
+        builder.addListener(new EngineListener() {
+                    public void onGeneration(int generationNum, Candidate bestCandidate,
+                            List<Candidate> candidates) {
+                        List<Chromosome> chromosomes = new ArrayList<Chromosome>();
+                        for (Candidate candidate : candidates) {
+                            chromosomes.add(Chromosomes.detach(candidate.chromosome()));
+                        }
+                        generations.add(chromosomes);
+                    }
+                })
+                .setTerminationOp(Ops.terminateAtGeneration(numGenerations))
+                .build()
+                .call();
+        return generations;
+    }
+
     private FitnessOp fitnessOp() {
         return new FitnessOp() {
             public double fitness(Chromosome chromosome) {
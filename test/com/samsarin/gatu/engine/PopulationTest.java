@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.samsarin.gatu.op.BoundedFitnessOp;
+import com.samsarin.gatu.primitive.Candidate;
+import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.Chromosomes;
+import com.samsarin.gatu.primitive.Rng;
+
+/**
+ * @author chris@samsarin.com
+ */
+public class PopulationTest {
+    @Test
+    public void sortedByFitness() {
+        Rng random = new Rng(5);
+        int n = 1000;
+        Chromosome[] chromosomes = new Chromosome[n];
+        double[] fitness = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; ++i) {
+            chromosomes[i] = Chromosomes.random(8, random);
+            // Plenty of ties to check that the sort is stable
+            fitness[i] = random.nextInt(50);
+            sum += fitness[i];
+        }
+
+        Population population = new Population(chromosomes.clone(), fitness.clone());
+        assertEquals(n, population.size());
+        assertEquals(sum, population.fitnessSum(), 0);
+
+        int previous = -1;
+        for (int i = 0; i < n; ++i) {
+            int original = indexOf(chromosomes, population.chromosome(i));
+            assertEquals(fitness[original], population.fitness(i), 0);
+            assertEquals(fitness[original], population.get(i).fitness(), 0);
+            assertTrue(i == 0 || population.fitness(i - 1) <= population.fitness(i));
+            if (i > 0 && population.fitness(i - 1) == population.fitness(i)) {
+                assertTrue(original > previous);
+            }
+            previous = original;
+        }
+    }
+
+    @Test
+    public void partlyOrdered() {
+        Rng random = new Rng(6);
+        int n = 1000;
+        Chromosome[] chromosomes = new Chromosome[n];
+        double[] fitness = new double[n];
+        for (int i = 0; i < n; ++i) {
+            chromosomes[i] = Chromosomes.random(8, random);
+            fitness[i] = random.nextInt(200);
+        }
+
+        int k = 10;
+        Population population = new Population(chromosomes, fitness, k);
+        for (int i = n - k + 1; i < n; ++i) {
+            assertTrue(population.fitness(i - 1) <= population.fitness(i));
+        }
+        for (int i = 0; i < n - k; ++i) {
+            assertTrue(population.fitness(i) <= population.fitness(n - k));
+        }
+    }
+
+    @Test
+    public void withMigrantsKeepsFittest() {
+        Rng random = new Rng(7);
+        Chromosome[] chromosomes = new Chromosome[6];
+        double[] fitness = new double[chromosomes.length];
+        Object[] states = new Object[chromosomes.length];
+        for (int i = 0; i < chromosomes.length; ++i) {
+            chromosomes[i] = Chromosomes.random(8, random);
+            fitness[i] = i;
+            states[i] = "state" + i;
+        }
+        Population population = new Population(chromosomes, fitness, states, chromosomes.length);
+
+        Candidate worse = new CandidateImpl(2.5, Chromosomes.random(8, random));
+        Candidate better = new CandidateImpl(10, Chromosomes.random(8, random));
+        Population merged = population.withMigrants(Arrays.asList(worse, better));
+
+        assertEquals(chromosomes.length, merged.size());
+        double[] expected = {2, 2.5, 3, 4, 5, 10};
+        for (int i = 0; i < expected.length; ++i) {
+            assertEquals(expected[i], merged.fitness(i), 0);
+        }
+        assertTrue(merged.chromosome(1) == worse.chromosome());
+        assertTrue(merged.chromosome(5) == better.chromosome());
+
+        // Only the candidates that were already in the population keep their
+        // evaluations
+        assertEquals("state3", merged.evaluation(chromosomes[3]).state());
+        assertNull(merged.evaluation(chromosomes[1]));
+        assertNull(merged.evaluation(better.chromosome()));
+    }
+
+    @Test
+    public void withMigrantsDoesNotEvaluateBounds() {
+        Rng random = new Rng(8);
+        Chromosome[] chromosomes = new Chromosome[4];
+        for (int i = 0; i < chromosomes.length; ++i) {
+            chromosomes[i] = Chromosomes.random(8, random);
+        }
+        BoundedFitnessOp failingOp = new BoundedFitnessOp() {
+            public double fitness(Chromosome chromosome) {
+                throw new AssertionError("Evaluated " + chromosome);
+            }
+
+            public double fitness(Chromosome chromosome, double cutoff) {
+                throw new AssertionError("Evaluated " + chromosome);
+            }
+        };
+        Population population = new Population(chromosomes, new double[] {1, 2, 5, 6}, chromosomes.length, 3,
+                failingOp);
+
+        Candidate migrant = new CandidateImpl(1.5, Chromosomes.random(8, random));
+        Population merged = population.withMigrants(Arrays.asList(migrant));
+
+        assertEquals(1.5, merged.fitness(0), 0);
+        assertTrue(merged.isBound(0));
+        assertEquals(1.5, merged.exactFitness(0), 0);
+        assertEquals(2, merged.fitness(1), 0);
+        assertTrue(merged.isBound(1));
+    }
+
+    @Test
+    public void fitnessAgainstCutoffKeepsTighterBounds() {
+        Rng random = new Rng(9);
+        final Chromosome[] chromosomes = new Chromosome[4];
+        for (int i = 0; i < chromosomes.length; ++i) {
+            chromosomes[i] = Chromosomes.random(8, random);
+        }
+        final double[] exact = {0.5, 1.75, 5, 6};
+        final AtomicInteger numEvaluations = new AtomicInteger();
+        BoundedFitnessOp fitnessOp = new BoundedFitnessOp() {
+            public double fitness(Chromosome chromosome) {
+                numEvaluations.incrementAndGet();
+                return exact[indexOf(chromosomes, chromosome)];
+            }
+
+            public double fitness(Chromosome chromosome, double cutoff) {
+                numEvaluations.incrementAndGet();
+                double fitness = exact[indexOf(chromosomes, chromosome)];
+                return fitness < cutoff ? Math.nextDown(cutoff) : fitness;
+            }
+        };
+        Population population = new Population(chromosomes, new double[] {1, 2, 5, 6}, chromosomes.length, 3,
+                fitnessOp);
+
+        // Reaching the cutoff gives the exact fitness, which is kept
+        assertEquals(1.75, population.fitness(1, 1.5), 0);
+        assertEquals(1.75, population.fitness(1, 1.5), 0);
+        assertEquals(1.75, population.exactFitness(1), 0);
+        assertEquals(1, numEvaluations.get());
+
+        // Falling short gives a tighter bound, which is kept
+        assertEquals(Math.nextDown(0.75), population.fitness(0, 0.75), 0);
+        assertEquals(Math.nextDown(0.75), population.fitness(0, 0.9), 0);
+        assertEquals(Math.nextDown(0.75), population.fitness(0, 2), 0);
+        assertEquals(5, population.fitness(2, 100), 0);
+        assertEquals(2, numEvaluations.get());
+    }
+
+    private static int indexOf(Chromosome[] chromosomes, Chromosome chromosome) {
+        for (int i = 0; i < chromosomes.length; ++i) {
+            if (chromosomes[i] == chromosome) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.op;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.samsarin.gatu.primitive.Chromosome;
+import com.samsarin.gatu.primitive.ChromosomeBuilder;
+import com.samsarin.gatu.primitive.ChromosomeReader;
+import com.samsarin.gatu.primitive.Chromosomes;
+
+/**
+ * @author chris@samsarin.com
+ */
+public class FitnessCacheTest {
+    private final AtomicInteger numEvaluations = new AtomicInteger();
+
+    @Test
+    public void hitsAndMisses() {
+        FitnessCache cache = new FitnessCache(fitnessOp(), 10);
+        Chromosome c = new ChromosomeBuilder(8).set(7, true).toChromosome();
+
+        assertEquals(1, cache.fitness(c), 0);
+        assertEquals(1, cache.fitness(new ChromosomeBuilder(8).set(7, true).toChromosome()), 0);
+
+        assertEquals(1, numEvaluations.get());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void evicts() {
+        FitnessCache cache = new FitnessCache(fitnessOp(), 4, 1);
+        for (int i = 0; i < 10; ++i) {
+            cache.fitness(chromosome(i));
+        }
+
+        assertEquals(4, cache.size());
+        assertEquals(6, cache.evictions());
+    }
+
+    @Test
+    public void keepsReferencedEntries() {
+        FitnessCache cache = new FitnessCache(fitnessOp(), 2, 1);
+        cache.fitness(chromosome(0));
+        cache.fitness(chromosome(1));
+        cache.fitness(chromosome(0));
+
+        // chromosome(1) has not been used since it was added, so it is evicted
+        cache.fitness(chromosome(2));
+        cache.fitness(chromosome(0));
+        assertEquals(2, cache.hits());
+        assertEquals(3, numEvaluations.get());
+    }
+
+    @Test
+    public void concurrentAccess() throws Exception {
+        final FitnessCache cache = new FitnessCache(fitnessOp(), 64);
+        final List<Chromosome> chromosomes = new ArrayList<Chromosome>();
+        for (int i = 0; i < 100; ++i) {
+            chromosomes.add(Chromosomes.random(16));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < 4; ++t) {
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() {
+                        for (int i = 0; i < 10000; ++i) {
+                            Chromosome c = chromosomes.get(i % chromosomes.size());
+                            assertEquals(new ChromosomeReader(c).readInt(16), cache.fitness(c), 0);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(40000, cache.hits() + cache.misses());
+        assertTrue(cache.size() <= 64);
+    }
+
+    @Test
+    public void boundedOnlyForBoundedOp() {
+        assertFalse(Ops.cachingFitness(fitnessOp(), 10) instanceof BoundedFitnessOp);
+        assertTrue(Ops.cachingFitness(boundedFitnessOp(), 10) instanceof BoundedFitnessOp);
+    }
+
+    @Test
+    public void doesNotCacheBounds() {
+        BoundedFitnessCache cache = new BoundedFitnessCache(boundedFitnessOp(), 10);
+
+        // Below the cutoff only the bound is returned, and it is not kept
+        assertEquals(Math.nextDown(5.0), cache.fitness(chromosome(3), 5), 0);
+        assertEquals(3, cache.fitness(chromosome(3)), 0);
+        assertEquals(3, cache.fitness(chromosome(3), 5), 0);
+
+        assertEquals(7, cache.fitness(chromosome(7), 5), 0);
+        assertEquals(7, cache.fitness(chromosome(7)), 0);
+
+        assertEquals(3, numEvaluations.get());
+        assertEquals(2, cache.size());
+    }
+
+    /**
+     * Returns a bounded op that counts its evaluations and returns the
+     * largest value below the cutoff for a chromosome that falls short of it.
+     */
+    private BoundedFitnessOp boundedFitnessOp() {
+        return new BoundedFitnessOp() {
+            public double fitness(Chromosome chromosome) {
+                return fitness(chromosome, Double.NEGATIVE_INFINITY);
+            }
+
+            public double fitness(Chromosome chromosome, double cutoff) {
+                numEvaluations.incrementAndGet();
+                double fitness = new ChromosomeReader(chromosome).readInt(chromosome.length());
+                return fitness < cutoff ? Math.nextDown(cutoff) : fitness;
+            }
+        };
+    }
+
+    private Chromosome chromosome(int value) {
+        ChromosomeBuilder cb = new ChromosomeBuilder(8);
+        for (int i = 0; i < 8; ++i) {
+            cb.set(7 - i, ((value >> i) & 1) == 1);
+        }
+        return cb.toChromosome();
+    }
+
+    private FitnessOp fitnessOp() {
+        return new FitnessOp() {
+            public double fitness(Chromosome chromosome) {
+                numEvaluations.incrementAndGet();
+                return new ChromosomeReader(chromosome).readInt(chromosome.length());
+            }
+        };
+    }
+}
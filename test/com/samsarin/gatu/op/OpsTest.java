@@ -8,17 +8,27 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Test;
 
+import com.samsarin.gatu.primitive.BoundedCandidateList;
+import com.samsarin.gatu.primitive.Candidate;
 import com.samsarin.gatu.primitive.Chromosome;
 import com.samsarin.gatu.primitive.ChromosomeBuilder;
 import com.samsarin.gatu.primitive.Chromosomes;
 import com.samsarin.gatu.primitive.Pair;
+import com.samsarin.gatu.primitive.Rng;
 
 /**
  * @author chris@samsarin.com
  */
 public class OpsTest {
+    private final Rng random = new Rng(1);
+
     @Test
     public void terminateAtGeneration() {
         TerminationOp op = Ops.terminateAtGeneration(2);
@@ -33,7 +43,7 @@ public class OpsTest {
 
         // Mutate everything
         MutationOp op = Ops.pointMutation(1);
-        Chromosome r = op.mutate(c);
+        Chromosome r = op.mutate(c, random);
 
         assertEquals(5, r.length());
         for (int i = 0; i < r.length(); ++i) {
@@ -41,6 +51,25 @@ public class OpsTest {
         }
     }
 
+    @Test
+    public void pointMutationRate() {
+        Chromosome c = Chromosomes.empty(100000);
+        Chromosome r = Ops.pointMutation(0.01).mutate(c, random);
+
+        int numMutated = 0;
+        for (int i = 0; i < r.length(); ++i) {
+            if (r.get(i)) numMutated++;
+        }
+        assertEquals(1000, numMutated, 150);
+    }
+
+    @Test
+    public void unchangedChromosomeIsNotCopied() {
+        Chromosome c = Chromosomes.random(1000);
+        assertTrue(c == Ops.pointMutation(0).mutate(c, random));
+        assertTrue(c == Ops.inversion(0).mutate(c, random));
+    }
+
     @Test
     public void singlePointCrossover() {
         Chromosome c1 = Chromosomes.empty(5);
@@ -52,13 +81,213 @@ public class OpsTest {
 
         for (int i = 0; i < 10; ++i) {
             CrossoverOp op = Ops.singlePointCrossover();
-            Pair<Chromosome> r = op.crossover(new Pair<Chromosome>(c1, cb2.toChromosome()));
+            Pair<Chromosome> r = op.crossover(new Pair<Chromosome>(c1, cb2.toChromosome()), random);
     
             assertCrossover(r.first(), 5, false);
             assertCrossover(r.second(), 5, true);
         }
     }
 
+    @Test
+    public void uniformCrossover() {
+        Chromosome c1 = Chromosomes.random(150);
+        Chromosome c2 = Chromosomes.random(150);
+
+        Pair<Chromosome> r = Ops.uniformCrossover().crossover(new Pair<Chromosome>(c1, c2), random);
+        for (int i = 0; i < c1.length(); ++i) {
+            // Each gene is either kept or swapped between the children
+            boolean kept = r.first().get(i) == c1.get(i) && r.second().get(i) == c2.get(i);
+            boolean swapped = r.first().get(i) == c2.get(i) && r.second().get(i) == c1.get(i);
+            assertTrue(kept || swapped);
+        }
+    }
+
+    @Test
+    public void rouletteWheelSelection() {
+        List<Candidate> candidates = candidates(0, 1, 3);
+        PreparedSelectionOp op = (PreparedSelectionOp)Ops.rouletteWheelSelection();
+        assertRouletteWheel(op.prepare(candidates, 4), candidates);
+        assertRouletteWheel(op, candidates);
+    }
+
+    @Test
+    public void rouletteWheelSelectionPreparedForEachList() {
+        // Engines that share the op, such as islands, each prepare it for
+        // their own candidates
+        List<Candidate> first = candidates(0, 1, 3);
+        List<Candidate> second = candidates(3, 1, 0);
+        PreparedSelectionOp op = (PreparedSelectionOp)Ops.rouletteWheelSelection();
+        SelectionOp preparedFirst = op.prepare(first, 4);
+        SelectionOp preparedSecond = op.prepare(second, 4);
+        for (int i = 0; i < 100; ++i) {
+            assertTrue(first.get(0).chromosome() != preparedFirst.select(first, 4, random));
+            assertTrue(second.get(2).chromosome() != preparedSecond.select(second, 4, random));
+        }
+    }
+
+    /**
+     * Checks that {@code op} selects from {@link #candidates(double...)} with
+     * fitness 0, 1 and 3 in proportion to their fitness.
+     */
+    private void assertRouletteWheel(SelectionOp op, List<Candidate> candidates) {
+        int[] counts = new int[candidates.size()];
+        for (int i = 0; i < 40000; ++i) {
+            Chromosome selected = op.select(candidates, 4, random);
+            for (int j = 0; j < candidates.size(); ++j) {
+                if (candidates.get(j).chromosome() == selected) {
+                    counts[j]++;
+                }
+            }
+        }
+
+        assertEquals(0, counts[0]);
+        assertEquals(0.25, counts[1] / 40000.0, 0.02);
+        assertEquals(0.75, counts[2] / 40000.0, 0.02);
+    }
+
+    @Test
+    public void stochasticUniversalSampling() {
+        List<Candidate> candidates = candidates(0, 1, 3, 4);
+        List<Chromosome> selected = Ops.stochasticUniversalSampling().selectAll(candidates, 8, 8, random);
+
+        // Each chromosome is selected exactly its expected number of times
+        int[] counts = new int[candidates.size()];
+        for (Chromosome chromosome : selected) {
+            for (int j = 0; j < candidates.size(); ++j) {
+                if (candidates.get(j).chromosome() == chromosome) {
+                    counts[j]++;
+                }
+            }
+        }
+        assertEquals(0, counts[0]);
+        assertEquals(1, counts[1]);
+        assertEquals(3, counts[2]);
+        assertEquals(4, counts[3]);
+    }
+
+    @Test
+    public void tournamentSelection() {
+        List<Candidate> candidates = candidates(1, 2, 3, 4, 5);
+
+        // A tournament of the whole population is always won by the best
+        SelectionOp op = Ops.tournamentSelection(5);
+        for (int i = 0; i < 100; ++i) {
+            assertTrue(candidates.get(4).chromosome() == op.select(candidates, 15, random));
+        }
+
+        // The least fit candidate can never win a tournament of two
+        op = Ops.tournamentSelection(2);
+        for (int i = 0; i < 100; ++i) {
+            assertFalse(candidates.get(0).chromosome() == op.select(candidates, 15, random));
+        }
+
+        // The candidates do not need to be in order
+        List<Candidate> unordered = candidates(3, 5, 1, 4, 2);
+        op = Ops.tournamentSelection(5);
+        assertTrue(unordered.get(1).chromosome() == op.select(unordered, 15, random));
+    }
+
+    @Test
+    public void tournamentSelectionComparesBoundsExactly() {
+        List<Candidate> candidates = candidates(0.5, 0.5, 2);
+        SelectionOp op = Ops.tournamentSelection(2);
+
+        // The bounds tie, so the later candidate is evaluated in full and the
+        // first only wins if it reaches that fitness
+        BoundedCandidateListStub boundedPair = new BoundedCandidateListStub(candidates.subList(0, 2),
+                new double[] {0.25, 0.125}, true, true);
+        assertTrue(candidates.get(0).chromosome() == op.select(boundedPair, 0, random));
+        assertEquals(Arrays.asList(1), boundedPair.evaluatedInFull);
+
+        boundedPair = new BoundedCandidateListStub(candidates.subList(0, 2),
+                new double[] {0.25, 0.375}, true, true);
+        assertTrue(candidates.get(1).chromosome() == op.select(boundedPair, 0, random));
+        assertEquals(Arrays.asList(1), boundedPair.evaluatedInFull);
+
+        // An unbounded candidate beats a bounded one without evaluating it
+        BoundedCandidateListStub mixedPair = new BoundedCandidateListStub(candidates.subList(1, 3),
+                new double[] {0.125, 2}, true, false);
+        assertTrue(candidates.get(2).chromosome() == op.select(mixedPair, 0, random));
+        assertTrue(mixedPair.evaluatedInFull.isEmpty());
+        assertTrue(mixedPair.evaluatedAgainstCutoff.isEmpty());
+    }
+
+    /**
+     * A bounded view of a list of candidates whose fitness is the bound, with
+     * the given exact fitness. Records which candidates are evaluated in full
+     * and which are evaluated again against a cutoff.
+     */
+    private static class BoundedCandidateListStub extends AbstractList<Candidate>
+            implements BoundedCandidateList {
+        private final List<Candidate> candidates;
+        private final double[] exact;
+        private final boolean[] bound;
+        final List<Integer> evaluatedInFull = new ArrayList<Integer>();
+        final List<Integer> evaluatedAgainstCutoff = new ArrayList<Integer>();
+
+        BoundedCandidateListStub(List<Candidate> candidates, double[] exact, boolean... bound) {
+            this.candidates = candidates;
+            this.exact = exact;
+            this.bound = bound;
+        }
+
+        public boolean isBound(int index) {
+            return bound[index];
+        }
+
+        public double exactFitness(int index) {
+            if (bound[index]) {
+                evaluatedInFull.add(index);
+            }
+            return exact[index];
+        }
+
+        public double fitness(int index, double cutoff) {
+            if (!bound[index]) {
+                return exact[index];
+            }
+            evaluatedAgainstCutoff.add(index);
+            return exact[index] < cutoff ? Math.nextDown(cutoff) : exact[index];
+        }
+
+        public double fitness(int index) {
+            return candidates.get(index).fitness();
+        }
+
+        public Chromosome chromosome(int index) {
+            return candidates.get(index).chromosome();
+        }
+
+        public Candidate get(int index) {
+            return candidates.get(index);
+        }
+
+        public int size() {
+            return candidates.size();
+        }
+    }
+
+    private List<Candidate> candidates(double... fitnesses) {
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        for (final double fitness : fitnesses) {
+            final Chromosome chromosome = Chromosomes.random(8);
+            candidates.add(new Candidate() {
+                public Chromosome chromosome() {
+                    return chromosome;
+                }
+
+                public double fitness() {
+                    return fitness;
+                }
+
+                public int compareTo(Candidate other) {
+                    return Double.compare(fitness, other.fitness());
+                }
+            });
+        }
+        return candidates;
+    }
+
     private void assertCrossover(Chromosome c, int length, boolean initialValue) {
         assertEquals(length, c.length());
         boolean hasInitialValue = false;
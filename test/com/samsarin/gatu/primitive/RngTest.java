@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.primitive;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author chris@samsarin.com
+ */
+public class RngTest {
+    @Test
+    public void sameSeedSameSequence() {
+        Rng r1 = new Rng(7);
+        Rng r2 = new Rng(7);
+        for (int i = 0; i < 100; ++i) {
+            assertEquals(r1.nextLong(), r2.nextLong());
+        }
+    }
+
+    @Test
+    public void splitIsRepeatableAndIndependent() {
+        Rng r1 = new Rng(7).split();
+        Rng r2 = new Rng(7).split();
+        assertEquals(r1.nextLong(), r2.nextLong());
+
+        Rng parent = new Rng(7);
+        Rng child = parent.split();
+        assertFalse(parent.nextLong() == child.nextLong());
+    }
+
+    @Test
+    public void nextIntIsWithinBound() {
+        Rng random = new Rng(1);
+        int[] counts = new int[3];
+        for (int i = 0; i < 30000; ++i) {
+            counts[random.nextInt(3)]++;
+        }
+        for (int count : counts) {
+            assertEquals(10000, count, 500);
+        }
+    }
+
+    @Test
+    public void nextDoubleIsWithinRange() {
+        Rng random = new Rng(1);
+        for (int i = 0; i < 1000; ++i) {
+            double value = random.nextDouble();
+            assertTrue(value >= 0 && value < 1);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nextIntWithNonPositiveBound() {
+        new Rng(1).nextInt(0);
+    }
+}
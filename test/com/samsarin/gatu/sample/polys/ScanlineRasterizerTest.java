@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2008 Chris Pettitt
+ */
+
+package com.samsarin.gatu.sample.polys;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Polygon;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+import com.samsarin.gatu.primitive.Rng;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares {@link ScanlineRasterizer} with Java2D, which it replaces in the
+ * fitness op.
+ *
+ * @author chris@samsarin.com
+ */
+public class ScanlineRasterizerTest {
+    private static final int WIDTH = 32;
+    private static final int HEIGHT = 24;
+    private static final int BACKGROUND = 0x336699;
+    private static final Color OPAQUE = new Color(200, 100, 50);
+    private static final Color TRANSLUCENT = new Color(200, 100, 50, 160);
+
+    @Test
+    public void rectangle() {
+        assertMatches(polygon(3, 2, 20, 2, 20, 15, 3, 15));
+    }
+
+    @Test
+    public void rectanglePartlyOutside() {
+        assertMatches(polygon(-5, -3, 40, -3, 40, 10, -5, 10));
+    }
+
+    @Test
+    public void horizontalEdge() {
+        assertMatches(polygon(2, 3, 30, 3, 16, 22));
+    }
+
+    @Test
+    public void selfIntersecting() {
+        assertMatches(polygon(2, 2, 30, 20, 2, 20, 30, 2));
+        assertMatches(polygon(16, 1, 22, 22, 2, 8, 30, 8, 10, 22));
+    }
+
+    @Test
+    public void verticesOutside() {
+        assertMatches(polygon(-50, -40, 80, -30, 16, 60));
+        assertMatches(polygon(-50, -40, -10, -30, -20, 60));
+    }
+
+    @Test
+    public void degenerate() {
+        assertMatches(polygon(2, 5, 20, 5, 30, 5));
+    }
+
+    @Test
+    public void rectangleAtHalfScale() {
+        assertEquals(0, differences(polygon(6, 4, 40, 4, 40, 30, 6, 30), OPAQUE, 0.5));
+        assertEquals(0, differences(polygon(6, 4, 40, 4, 40, 30, 6, 30), TRANSLUCENT, 0.5));
+    }
+
+    /**
+     * Random polygons with horizontal edges, self-intersections and vertices
+     * outside the image only differ from Java2D in rare pixels on an edge.
+     */
+    @Test
+    public void randomPolygons() {
+        Rng random = new Rng(42);
+        int numPixels = 0;
+        int numDifferences = 0;
+        for (int i = 0; i < 500; ++i) {
+            int n = 3 + random.nextInt(6);
+            int[] xs = new int[n];
+            int[] ys = new int[n];
+            for (int j = 0; j < n; ++j) {
+                xs[j] = random.nextInt(WIDTH + 20) - 10;
+                // Reuse the previous y now and then for a horizontal edge
+                ys[j] = j > 0 && random.nextInt(4) == 0 ? ys[j - 1] : random.nextInt(HEIGHT + 20) - 10;
+            }
+            Color color = new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256),
+                    1 + random.nextInt(255));
+            numDifferences += differences(new Polygon(xs, ys, n), color, 1);
+            numPixels += WIDTH * HEIGHT;
+        }
+        assertTrue("Pixels that differ: " + numDifferences + " of " + numPixels,
+                numDifferences < numPixels / 1000);
+    }
+
+    private static void assertMatches(Polygon polygon) {
+        assertEquals(0, differences(polygon, OPAQUE, 1));
+        assertEquals(0, differences(polygon, TRANSLUCENT, 1));
+    }
+
+    /**
+     * Returns the number of pixels that differ when {@code polygon} is drawn
+     * over the background by Java2D and by the rasterizer.
+     */
+    private static int differences(Polygon polygon, Color color, double scale) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(BACKGROUND));
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        g.scale(scale, scale);
+        g.setColor(color);
+        g.fillPolygon(polygon);
+        g.dispose();
+        int[] expected = new int[WIDTH * HEIGHT];
+        image.getRaster().getDataElements(0, 0, WIDTH, HEIGHT, expected);
+
+        ScanlineRasterizer rasterizer = new ScanlineRasterizer(WIDTH, HEIGHT, scale);
+        rasterizer.clear(BACKGROUND);
+        rasterizer.fill(polygon, color);
+        int[] actual = rasterizer.pixels();
+
+        int count = 0;
+        for (int i = 0; i < expected.length; ++i) {
+            // Java2D leaves the unused alpha bits set
+            if ((expected[i] & 0xFFFFFF) != actual[i]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Polygon polygon(int... coordinates) {
+        Polygon polygon = new Polygon();
+        for (int i = 0; i < coordinates.length; i += 2) {
+            polygon.addPoint(coordinates[i], coordinates[i + 1]);
+        }
+        return polygon;
+    }
+}